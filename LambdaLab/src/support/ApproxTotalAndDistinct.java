@@ -0,0 +1,42 @@
+package support;
+
+/**
+ * Counts the total and distinct words in a stream, like the
+ * TotalAndDistinct of F_AdvancedStreams, but estimating the distinct count
+ * with a HyperLogLog instead of keeping every word in a HashSet. It's used
+ * the same way:
+ *
+ *     collect(ApproxTotalAndDistinct::new,
+ *             ApproxTotalAndDistinct::accumulate,
+ *             ApproxTotalAndDistinct::combine)
+ *
+ * The distinct count is exact up to the HyperLogLog's threshold, and
+ * within about 1.04 / sqrt(2^precision) (relative standard error) above
+ * it.
+ */
+public class ApproxTotalAndDistinct {
+    private long count = 0;
+    private final HyperLogLog distinct;
+
+    public ApproxTotalAndDistinct() {
+        this(HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    public ApproxTotalAndDistinct(int precision) {
+        distinct = new HyperLogLog(precision);
+    }
+
+    public void accumulate(CharSequence s) {
+        count++;
+        distinct.add(s);
+    }
+
+    public void combine(ApproxTotalAndDistinct other) {
+        count += other.count;
+        distinct.merge(other.distinct);
+    }
+
+    public long getTotalCount() { return count; }
+    public long getDistinctCount() { return distinct.cardinality(); }
+    public boolean isExact() { return distinct.isExact(); }
+}
@@ -0,0 +1,89 @@
+package support;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An output file that is written to a temporary file in the same directory
+ * and moved over the target when committed, so that other readers (the IDE,
+ * Ant) see either the old file or the complete new one, never a partial one.
+ * If closed without being committed, the temporary file is deleted and the
+ * target is left untouched.
+ *
+ * Typical use:
+ *
+ *     try (AtomicOutput out = new AtomicOutput(path)) {
+ *         out.channel().write(...);
+ *         out.commit();
+ *     }
+ */
+class AtomicOutput implements Closeable {
+    final Path target;
+    final Path temp;
+    final FileChannel channel;
+    boolean committed = false;
+
+    AtomicOutput(Path target) throws IOException {
+        this.target = target;
+        Path dir = target.toAbsolutePath().getParent();
+        Path t;
+        FileChannel ch;
+        while (true) {
+            t = dir.resolve("." + target.getFileName() + "."
+                            + Integer.toHexString(ThreadLocalRandom.current().nextInt())
+                            + ".tmp");
+            try {
+                ch = FileChannel.open(t, CREATE_NEW, WRITE);
+                break;
+            } catch (FileAlreadyExistsException faee) {
+                // name collision; try another
+            }
+        }
+        this.temp = t;
+        this.channel = ch;
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * Closes the temporary file and moves it into place. Falls back to a
+     * non-atomic replace on file systems that can't move atomically.
+     */
+    void commit() throws IOException {
+        channel.close();
+        try {
+            Files.move(temp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException amnse) {
+            Files.move(temp, target, REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            channel.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+}
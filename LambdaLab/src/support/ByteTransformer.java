@@ -0,0 +1,348 @@
+package support;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Byte-oriented counterpart of Transformer. The input file is memory-mapped
+ * and scanned with the same automaton; since every marker is ASCII, and no
+ * byte of a multi-byte UTF-8 sequence is ASCII, markers can be found
+ * without decoding. The output is written as a list of slices of the
+ * mapped input interleaved with the replacement text, using gathering
+ * writes. Runs of unchanged lines are written as a single slice.
+ *
+ * Unlike the line pipeline, line terminators are copied from the input as
+ * they are, rather than being normalized to the platform line separator.
+ * A final line with no terminator is given a newline.
+ */
+class ByteTransformer {
+    static final int MAX_GATHER = 64;
+
+    static final ByteBuffer[] REPLACEMENTS =
+        Arrays.stream(Transformer.REPLACEMENTS)
+              .map(s -> s == null ? null : ascii(s))
+              .toArray(ByteBuffer[]::new);
+
+    static final ByteBuffer TODO_SUFFIX = ascii(Transformer.TODO_SUFFIX);
+    static final ByteBuffer NEWLINE = ascii("\n");
+
+    static ByteBuffer ascii(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+
+    final ByteBuffer in;
+    final GatheringByteChannel out;
+    final ByteBuffer[] pending = new ByteBuffer[MAX_GATHER];
+    int pendingCount;
+
+    // A run of input bytes [runStart, runEnd) not yet added to pending.
+    int runStart;
+    int runEnd;
+
+    boolean removing = false;
+    long linesKept;
+    long linesRemoved;
+    long markers;
+    long writeNanos;
+
+    int[] matchIds = new int[8];
+    int[] matchEnds = new int[8];
+    int matchCount;
+
+    ByteTransformer(ByteBuffer in, GatheringByteChannel out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Maps the whole of the open input file.
+     */
+    static MappedByteBuffer map(Path input, FileChannel inch) throws IOException {
+        long size = inch.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(input + ": too large to map (" + size + " bytes)");
+        }
+        return inch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * Transforms the mapped input into output. The time spent is added to
+     * stats, along with the transformer's counts.
+     */
+    static void transform(ByteBuffer mapped, Path output, GrindStats.FileStats stats) throws IOException {
+        stats.mode = "mmap";
+        try (AtomicOutput out = new AtomicOutput(output)) {
+            long t1 = System.nanoTime();
+            ByteTransformer bt = new ByteTransformer(mapped, out.channel());
+            bt.run();
+            long t2 = System.nanoTime();
+            stats.bytesWritten = out.channel().size();
+            out.commit();
+            long t3 = System.nanoTime();
+
+            stats.bytesRead = mapped.limit();
+            stats.linesKept = bt.linesKept;
+            stats.linesRemoved = bt.linesRemoved;
+            stats.markers = bt.markers;
+            stats.transformNanos += t2 - t1 - bt.writeNanos;
+            stats.writeNanos += bt.writeNanos + t3 - t2;
+        }
+    }
+
+    /**
+     * If the mapped input contains no marker other than the package
+     * declaration, copies it to output using FileChannel.transferTo from
+     * inch, substituting the package declaration if there is one, and
+     * returns true. Otherwise, writes nothing and returns false. The check
+     * stops at the first marker that requires a full transformation; its
+     * time is added to stats either way.
+     */
+    static boolean copyIfUnmarked(FileChannel inch, ByteBuffer mapped, Path output, GrindStats.FileStats stats)
+            throws IOException {
+        long t0 = System.nanoTime();
+        int limit = mapped.limit();
+        long size = limit;
+        int packageId = -1;
+        int packageEnd = -1;
+        int state = 0;
+        long lines = 0;
+        for (int i = 0; i < limit; i++) {
+            int b = mapped.get(i) & 0xff;
+            // count line ends as run() splits them: \n, \r, or \r\n once
+            if (b == '\n' || b == '\r' && (i + 1 == limit || mapped.get(i + 1) != '\n')) {
+                lines++;
+            }
+            state = Transformer.step(state, b);
+            int m = Transformer.MATCH[state];
+            if (m >= 0) {
+                if (m != Transformer.PACKAGE && m != Transformer.SUBPACKAGE || packageId >= 0) {
+                    stats.transformNanos += System.nanoTime() - t0;
+                    return false;
+                }
+                packageId = m;
+                packageEnd = i + 1;
+                state = 0;
+            }
+        }
+
+        long t1 = System.nanoTime();
+        try (AtomicOutput out = new AtomicOutput(output)) {
+            long pos = 0;
+            if (packageId >= 0) {
+                int packageStart = packageEnd - Transformer.MARKERS[packageId].length();
+                transferFully(inch, 0, packageStart, out.channel());
+                out.write(REPLACEMENTS[packageId].duplicate());
+                pos = packageEnd;
+            }
+            transferFully(inch, pos, size - pos, out.channel());
+            if (size > 0 && mapped.get(limit - 1) != '\n' && mapped.get(limit - 1) != '\r') {
+                out.write(NEWLINE.duplicate());
+                lines++;
+            }
+            stats.bytesWritten = out.channel().size();
+            out.commit();
+        }
+
+        stats.mode = "copy";
+        stats.bytesRead = size;
+        stats.linesKept = lines;
+        stats.markers = packageId >= 0 ? 1 : 0;
+        stats.transformNanos += t1 - t0;
+        stats.writeNanos += System.nanoTime() - t1;
+        return true;
+    }
+
+    /**
+     * Transfers count bytes from pos in the input.
+     *
+     * @throws IOException if the input ends first, as when it's truncated
+     *         after being mapped
+     */
+    static void transferFully(FileChannel in, long pos, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            long n = in.transferTo(pos, count, out);
+            if (n == 0) {
+                throw new IOException("input ended at " + pos + " with " + count + " bytes still to copy");
+            }
+            pos += n;
+            count -= n;
+        }
+    }
+
+    void run() throws IOException {
+        int limit = in.limit();
+        int start = 0;
+        while (start < limit) {
+            // a line ends at \n, \r or \r\n, as in BufferedReader.readLine
+            int end = start;
+            byte b = 0;
+            while (end < limit && (b = in.get(end)) != '\n' && b != '\r') {
+                end++;
+            }
+            int next = end;
+            if (next < limit) {
+                next++;
+                if (b == '\r' && next < limit && in.get(next) == '\n') {
+                    next++;
+                }
+            }
+            line(start, end, next);
+            start = next;
+        }
+        flushRun();
+        flush();
+    }
+
+    /**
+     * Processes the line whose content is [start, end) and whose terminator,
+     * if any, is [end, next).
+     */
+    void line(int start, int end, int next) throws IOException {
+        scan(start, end);
+        if (matchCount == 0) {
+            if (removing) {
+                linesRemoved++;
+            } else {
+                linesKept++;
+                keep(start, next);
+                terminate(end, next);
+            }
+            return;
+        }
+
+        markers += matchCount;
+        int lastTodo = -1;
+        boolean endRemove = false;
+        for (int k = 0; k < matchCount; k++) {
+            switch (matchIds[k]) {
+                case Transformer.BEGINREMOVE:
+                    removing = true;
+                    linesRemoved++;
+                    return;
+                case Transformer.ENDREMOVE:
+                    endRemove = true;
+                    break;
+                case Transformer.TODO:
+                    lastTodo = k;
+                    break;
+            }
+        }
+        if (endRemove) {
+            removing = false;
+            linesRemoved++;
+            return;
+        }
+        if (removing) {
+            linesRemoved++;
+            return;
+        }
+
+        linesKept++;
+        int pos = start;
+        for (int k = 0; k < matchCount; k++) {
+            int m = matchIds[k];
+            int mstart = matchEnds[k] - Transformer.MARKERS[m].length();
+            keep(pos, mstart);
+            if (m == Transformer.TODO && k != lastTodo) {
+                keep(mstart, matchEnds[k]);
+            } else {
+                add(REPLACEMENTS[m]);
+            }
+            pos = matchEnds[k];
+        }
+        keep(pos, end);
+        if (lastTodo >= 0) {
+            add(TODO_SUFFIX);
+        }
+        keep(end, next);
+        terminate(end, next);
+    }
+
+    void terminate(int end, int next) throws IOException {
+        if (end == next) {
+            add(NEWLINE);
+        }
+    }
+
+    /**
+     * Finds markers in [start, end), as in Transformer.scan.
+     */
+    void scan(int start, int end) {
+        matchCount = 0;
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            state = Transformer.step(state, in.get(i) & 0xff);
+            int m = Transformer.MATCH[state];
+            if (m >= 0) {
+                if (matchCount == matchIds.length) {
+                    matchIds = Arrays.copyOf(matchIds, matchCount * 2);
+                    matchEnds = Arrays.copyOf(matchEnds, matchCount * 2);
+                }
+                matchIds[matchCount] = m;
+                matchEnds[matchCount] = i + 1;
+                matchCount++;
+                state = 0;
+            }
+        }
+    }
+
+    /**
+     * Retains input bytes [from, to), extending the current run if they
+     * follow on from it.
+     */
+    void keep(int from, int to) throws IOException {
+        if (from == to) {
+            return;
+        }
+        if (from != runEnd) {
+            flushRun();
+            runStart = from;
+        }
+        runEnd = to;
+    }
+
+    void flushRun() throws IOException {
+        if (runStart < runEnd) {
+            ByteBuffer slice = in.duplicate().position(runStart).limit(runEnd);
+            runStart = runEnd;
+            append(slice);
+        }
+    }
+
+    /**
+     * Adds replacement text to the output, after any pending run of input.
+     */
+    void add(ByteBuffer buf) throws IOException {
+        if (buf.hasRemaining()) {
+            flushRun();
+            append(buf.duplicate());
+        }
+    }
+
+    void append(ByteBuffer buf) throws IOException {
+        pending[pendingCount++] = buf;
+        if (pendingCount == MAX_GATHER) {
+            flush();
+        }
+    }
+
+    void flush() throws IOException {
+        long t0 = System.nanoTime();
+        int first = 0;
+        while (first < pendingCount) {
+            out.write(pending, first, pendingCount - first);
+            while (first < pendingCount && !pending[first].hasRemaining()) {
+                first++;
+            }
+        }
+        Arrays.fill(pending, 0, pendingCount, null);
+        pendingCount = 0;
+        writeNanos += System.nanoTime() - t0;
+    }
+}
@@ -0,0 +1,126 @@
+package support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles generated exercise files in-process to check that they are still
+ * valid, without writing any class files. The StandardJavaFileManager is
+ * created once and reused, so the platform classes and classpath jars are
+ * opened only once per JVM; this matters in watch mode, where a check is
+ * run after every batch of changes.
+ *
+ * The classpath is that of the running JVM, so run Grind with JUnit (and
+ * Hamcrest) on its classpath. Other classes under test, such as
+ * model.Person, are found through the source path.
+ */
+class CompileCheck {
+    static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+    static StandardJavaFileManager sharedFileManager;
+
+    /**
+     * A file manager that keeps class output in memory, where it is
+     * discarded when the check finishes.
+     */
+    static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        final Map<String, ByteArrayOutputStream> classes = new ConcurrentHashMap<>();
+
+        MemoryFileManager(StandardJavaFileManager fm) {
+            super(fm);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location,
+                                                   String className,
+                                                   JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    classes.put(className, out);
+                    return out;
+                }
+            };
+        }
+    }
+
+    final List<Path> sourcePath;
+
+    CompileCheck(Path... sourcePath) {
+        this.sourcePath = Arrays.asList(sourcePath);
+    }
+
+    static synchronized StandardJavaFileManager fileManager() {
+        if (sharedFileManager == null) {
+            sharedFileManager = COMPILER.getStandardFileManager(null, Locale.getDefault(),
+                                                                StandardCharsets.UTF_8);
+        }
+        return sharedFileManager;
+    }
+
+    /**
+     * Compiles the given sources, printing any diagnostics.
+     *
+     * @return the number of errors
+     */
+    int check(List<Path> sources) throws IOException {
+        if (COMPILER == null) {
+            throw new IOException("no system Java compiler; run Grind on a JDK");
+        }
+
+        List<String> options = Arrays.asList(
+            "-classpath", System.getProperty("java.class.path"),
+            "-sourcepath", sourcePath.stream().map(Path::toString)
+                                     .collect(Collectors.joining(System.getProperty("path.separator"))),
+            "-implicit:class",
+            "-proc:none",
+            "-Xlint:none");
+
+        synchronized (CompileCheck.class) {
+            StandardJavaFileManager fm = fileManager();
+            Iterable<? extends JavaFileObject> units =
+                fm.getJavaFileObjectsFromFiles(sources.stream().map(Path::toFile)
+                                                      .collect(Collectors.toList()));
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            MemoryFileManager mfm = new MemoryFileManager(fm);
+            COMPILER.getTask(null, mfm, diagnostics, options, null, units).call();
+
+            int errors = 0;
+            for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                if (d.getKind() == Diagnostic.Kind.ERROR) {
+                    errors++;
+                }
+                String where = d.getSource() == null ? ""
+                    : d.getSource().getName() + ":" + d.getLineNumber() + ": ";
+                System.out.println(where + d.getKind().toString().toLowerCase(Locale.ROOT)
+                                   + ": " + d.getMessage(Locale.getDefault()));
+            }
+            System.out.println("compile check: " + sources.size() + " files, "
+                               + mfm.classes.size() + " classes, " + errors + " errors");
+            return errors;
+        }
+    }
+}
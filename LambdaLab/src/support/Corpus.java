@@ -0,0 +1,275 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A read-only text file, memory-mapped once per JVM and shared by all the
+ * tests that read it. Each call to newBufferedReader(), lines() or chars()
+ * returns a new, independent view of the same mapping, so a test can
+ * consume or close its view without affecting the others, and no test pays
+ * for reopening or rereading the file.
+ *
+ * Files are mapped in chunks of up to 1GB, so they may be larger than 2GB.
+ * The text is taken to be UTF-8.
+ *
+ * A cached corpus is replaced if the file's size, modification time or file
+ * key (where the file system has one, such as the inode) changes. A file
+ * rewritten in place with the same length within the file system's
+ * timestamp resolution can't be told apart, and keeps its old mapping
+ * (which, being a shared mapping, may then show the new bytes anyway).
+ */
+public final class Corpus {
+    static final int CHUNK_SHIFT = 30;
+
+    static final Map<Path, Corpus> CACHE = new ConcurrentHashMap<>();
+
+    final Path path;
+    final long size;
+    final FileTime modified;
+    final Object fileKey;
+    final int chunkShift;
+    final long chunkMask;
+    final ByteBuffer[] chunks;
+
+    // computed lazily
+    volatile Boolean ascii;
+    volatile String text;
+
+    Corpus(Path path) throws IOException {
+        this(path, CHUNK_SHIFT);
+    }
+
+    /** Maps the file in chunks of 2^chunkShift bytes. */
+    Corpus(Path path, int chunkShift) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        this.path = path;
+        this.modified = attrs.lastModifiedTime();
+        this.fileKey = attrs.fileKey();
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        try (FileChannel ch = FileChannel.open(path, READ)) {
+            this.size = ch.size();
+            int n = (int) ((size + chunkMask) >>> chunkShift);
+            chunks = new ByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                long pos = (long) i << chunkShift;
+                chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(chunkMask + 1, size - pos));
+            }
+        }
+    }
+
+    /** Returns true if the file still has the size, mtime and key it was mapped with. */
+    boolean isCurrent() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        return attrs.size() == size
+            && attrs.lastModifiedTime().equals(modified)
+            && Objects.equals(attrs.fileKey(), fileKey);
+    }
+
+    /**
+     * Returns the corpus for the given file, mapping it if it isn't already
+     * mapped or if it has changed.
+     */
+    public static Corpus of(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        Corpus c = CACHE.get(key);
+        if (c == null || !c.isCurrent()) {
+            c = new Corpus(key);
+            CACHE.put(key, c);
+        }
+        return c;
+    }
+
+    /** Returns the absolute path of the file. */
+    public Path path() {
+        return path;
+    }
+
+    /** Returns the size of the file in bytes. */
+    public long size() {
+        return size;
+    }
+
+    /** Returns the byte at the given offset in the file. */
+    public byte byteAt(long index) {
+        return chunks[(int) (index >>> chunkShift)].get((int) (index & chunkMask));
+    }
+
+    /**
+     * Copies len bytes starting at offset pos in the file into dst,
+     * crossing chunk boundaries as needed.
+     */
+    void copy(long pos, byte[] dst, int off, int len) {
+        while (len > 0) {
+            ByteBuffer chunk = chunks[(int) (pos >>> chunkShift)].duplicate();
+            chunk.position((int) (pos & chunkMask));
+            int n = Math.min(len, chunk.remaining());
+            chunk.get(dst, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Returns a new stream over the bytes of the file. */
+    public InputStream newInputStream() {
+        return new InputStream() {
+            long pos = 0;
+
+            @Override
+            public int read() {
+                return pos < size ? byteAt(pos++) & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (pos >= size) {
+                    return -1;
+                }
+                ByteBuffer chunk = chunks[(int) (pos >>> chunkShift)].duplicate();
+                chunk.position((int) (pos & chunkMask));
+                int n = Math.min(len, chunk.remaining());
+                chunk.get(b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, size - pos));
+                pos += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, size - pos);
+            }
+        };
+    }
+
+    /** Returns a new reader over the text of the file. */
+    public BufferedReader newBufferedReader() {
+        return new BufferedReader(new InputStreamReader(newInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a new stream of the lines of the file. The stream splits
+     * evenly, so it can usefully be made parallel; see LineSpliterator.
+     */
+    public Stream<String> lines() {
+        return StreamSupport.stream(new LineSpliterator(this, 0, size), false);
+    }
+
+    /**
+     * Returns the text of the file as a CharSequence. If the file is all
+     * ASCII, this is a view directly over the mapped bytes; otherwise the
+     * file is decoded (once) into a String.
+     *
+     * @throws IllegalStateException if the file is too large to be indexed
+     *         as a CharSequence
+     */
+    public CharSequence chars() {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException(path + ": too large for a CharSequence");
+        }
+        return isAscii() ? new AsciiView(0, (int) size) : toString();
+    }
+
+    /** Returns true if every byte of the file is ASCII. */
+    public boolean isAscii() {
+        Boolean a = ascii;
+        if (a == null) {
+            a = Boolean.TRUE;
+            scan:
+            for (ByteBuffer chunk : chunks) {
+                for (int i = 0, n = chunk.limit(); i < n; i++) {
+                    if (chunk.get(i) < 0) {
+                        a = Boolean.FALSE;
+                        break scan;
+                    }
+                }
+            }
+            ascii = a;
+        }
+        return a;
+    }
+
+    /**
+     * Returns the whole text of the file, decoded once and cached.
+     */
+    @Override
+    public String toString() {
+        String s = text;
+        if (s == null) {
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException(path + ": too large for a String");
+            }
+            byte[] bytes = new byte[(int) size];
+            copy(0, bytes, 0, bytes.length);
+            text = s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    /**
+     * A CharSequence over a range of the mapped bytes of an ASCII file.
+     */
+    final class AsciiView implements CharSequence {
+        final int start;
+        final int end;
+
+        AsciiView(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+            }
+            return (char) byteAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > end - start || from > to) {
+                throw new IndexOutOfBoundsException("range [" + from + ", " + to + "), length " + (end - start));
+            }
+            return new AsciiView(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[end - start];
+            copy(start, bytes, 0, bytes.length);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package support;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collector;
+
+/**
+ * Estimates word frequencies in a fixed amount of memory, for streams too
+ * large for an exact groupingBy(identity(), counting()) map.
+ *
+ * A count-min sketch (Cormode and Muthukrishnan) is a table of depth rows
+ * by width counters. Each word is hashed to one counter per row, and its
+ * estimated count is the smallest of its counters. Estimates never
+ * undercount. With width w = ceil(e / epsilon) and depth
+ * d = ceil(ln(1 / delta)), after n words each estimate exceeds the true
+ * count by at most epsilon * n, with probability at least 1 - delta. For
+ * example, epsilon = 0.0001 and delta = 0.001 gives a 27183 x 7 table
+ * (1.5MB) whose estimates are within n / 10000 of the truth, except with
+ * probability 0.1%.
+ *
+ * With conservative update (the default), an add raises each of the
+ * word's counters only as far as its new estimate, rather than adding to
+ * all of them. The bound is the same, but in practice the overcount is
+ * much smaller. Conservative update needs positive increments.
+ *
+ * Optionally, the sketch also tracks heavy hitters: words whose estimated
+ * count is at least phi * n. Candidates are kept in a WordCounts, used as a
+ * set, which is pruned as n grows, so it holds O(1 / phi) words; a String
+ * is made only when a word first becomes a candidate. Phi must exceed
+ * epsilon, or every word would look heavy and the candidates would churn.
+ *
+ * Sketches with the same dimensions are merged by adding their tables, as
+ * the Collector does for parallel streams. Not thread-safe.
+ */
+public final class CountMinSketch {
+    final int width;
+    final int depth;
+    final long[] table;
+    final boolean conservative;
+    final double phi;
+    /** Heavy hitter candidates, each with a count of 1; null if not tracked. */
+    WordCounts candidates;
+    long total;
+
+    /** Reused per add: the word's counter index in each row. */
+    final int[] cells;
+
+    /**
+     * Creates a sketch with the given dimensions. If phi is greater than 0,
+     * heavy hitters are tracked.
+     *
+     * @throws IllegalArgumentException if phi is greater than 0 but not
+     *         greater than epsilon = e / width
+     */
+    public CountMinSketch(int width, int depth, boolean conservative, double phi) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("width " + width + ", depth " + depth);
+        }
+        if (phi < 0 || phi >= 1) {
+            throw new IllegalArgumentException("phi " + phi + " is not in [0, 1)");
+        }
+        if (phi > 0 && phi <= Math.E / width) {
+            throw new IllegalArgumentException("phi " + phi + " is not greater than epsilon " + Math.E / width);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.table = new long[Math.multiplyExact(width, depth)];
+        this.conservative = conservative;
+        this.phi = phi;
+        this.candidates = phi > 0 ? new WordCounts() : null;
+        this.cells = new int[depth];
+    }
+
+    /**
+     * Creates a conservative-update sketch whose estimates are within
+     * epsilon * n of the true counts with probability at least 1 - delta,
+     * tracking heavy hitters if phi is greater than 0, in which case it must
+     * be greater than epsilon.
+     */
+    public static CountMinSketch forError(double epsilon, double delta, double phi) {
+        if (epsilon <= 0 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon " + epsilon + ", delta " + delta);
+        }
+        if (phi > 0 && epsilon >= phi) {
+            throw new IllegalArgumentException("epsilon " + epsilon + " is not less than phi " + phi);
+        }
+        int width = (int) Math.ceil(Math.E / epsilon);
+        int depth = (int) Math.ceil(Math.log(1 / delta));
+        return new CountMinSketch(width, depth, true, phi);
+    }
+
+    /** Returns the bound epsilon = e / width on overcount per word counted. */
+    public double epsilon() {
+        return Math.E / width;
+    }
+
+    /** Returns the probability delta = e^-depth that the bound is exceeded. */
+    public double delta() {
+        return Math.exp(-depth);
+    }
+
+    /**
+     * Sets cells to the word's counter in each row. The row hashes are
+     * derived from one 64-bit hash (Kirsch and Mitzenmacher).
+     */
+    void locate(CharSequence word) {
+        long h = Hashing.hash64(word);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < depth; i++) {
+            cells[i] = i * width + Math.floorMod(h1 + i * h2, width);
+        }
+    }
+
+    /** Adds one occurrence of the word. */
+    public void add(CharSequence word) {
+        add(word, 1);
+    }
+
+    /** Adds the given number of occurrences of the word. */
+    public void add(CharSequence word, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count " + count);
+        }
+        locate(word);
+        total += count;
+        long estimate;
+        if (conservative) {
+            long min = Long.MAX_VALUE;
+            for (int c : cells) {
+                min = Math.min(min, table[c]);
+            }
+            estimate = min + count;
+            for (int c : cells) {
+                if (table[c] < estimate) {
+                    table[c] = estimate;
+                }
+            }
+        } else {
+            estimate = Long.MAX_VALUE;
+            for (int c : cells) {
+                estimate = Math.min(estimate, table[c] += count);
+            }
+        }
+        if (candidates != null && estimate >= phi * total && candidates.get(word) == 0) {
+            candidates.add(word);
+            if (candidates.size() > 2 / phi) {
+                prune();
+            }
+        }
+    }
+
+    /** Drops the candidates that are no longer heavy. */
+    void prune() {
+        double min = phi * total;
+        WordCounts kept = new WordCounts();
+        candidates.forEach((word, one) -> {
+            if (estimate(word) >= min) {
+                kept.add(word);
+            }
+        });
+        candidates = kept;
+    }
+
+    /**
+     * Returns the estimated count of the word: at least its true count,
+     * and at most epsilon() * total() more with probability 1 - delta().
+     */
+    public long estimate(CharSequence word) {
+        locate(word);
+        long min = Long.MAX_VALUE;
+        for (int c : cells) {
+            min = Math.min(min, table[c]);
+        }
+        return min;
+    }
+
+    /** Returns the total of all the counts added. */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Returns the words whose estimated count is at least phi * total(),
+     * with their estimates, highest first. Every word whose true count is
+     * at least phi * total() is included; words whose true count is below
+     * (phi - epsilon()) * total() are excluded with probability
+     * 1 - delta().
+     *
+     * @throws IllegalStateException if heavy hitters aren't being tracked
+     */
+    public Map<String, Long> heavyHitters() {
+        if (candidates == null) {
+            throw new IllegalStateException("heavy hitters are not tracked (phi = 0)");
+        }
+        double min = phi * total;
+        List<Map.Entry<String, Long>> list = new ArrayList<>();
+        candidates.forEach((word, one) -> {
+            long estimate = estimate(word);
+            if (estimate >= min) {
+                list.add(TopK.entry(word, estimate));
+            }
+        });
+        list.sort(TopK.ORDER);
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : list) {
+            map.put(e.getKey(), e.getValue());
+        }
+        return map;
+    }
+
+    /**
+     * Merges the other sketch into this one.
+     *
+     * @throws IllegalArgumentException if the sketches differ in dimensions
+     *         or in heavy hitter tracking
+     */
+    public CountMinSketch merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth || other.phi != phi) {
+            throw new IllegalArgumentException("can't merge a " + other.width + "x" + other.depth
+                                               + " sketch (phi " + other.phi + ") into a "
+                                               + width + "x" + depth + " sketch (phi " + phi + ")");
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        total += other.total;
+        if (candidates != null) {
+            // a word heavy in the merged stream is heavy in at least one part
+            other.candidates.forEach((word, one) -> {
+                if (candidates.get(word) == 0) {
+                    candidates.add(word);
+                }
+            });
+            prune();
+        }
+        return this;
+    }
+
+    /**
+     * Returns a Collector that counts words into a sketch with the given
+     * error bounds, without heavy hitter tracking.
+     */
+    public static Collector<CharSequence, ?, CountMinSketch> counting(double epsilon, double delta) {
+        return Collector.of(() -> forError(epsilon, delta, 0), CountMinSketch::add, CountMinSketch::merge,
+                            Collector.Characteristics.UNORDERED,
+                            Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Returns a Collector for the words making up at least phi of the
+     * stream, with their estimated counts, highest first.
+     */
+    public static Collector<CharSequence, ?, Map<String, Long>> heavyHitters(double epsilon, double delta,
+                                                                            double phi) {
+        if (phi <= 0) {
+            throw new IllegalArgumentException("phi " + phi);
+        }
+        return Collector.of(() -> forError(epsilon, delta, phi), CountMinSketch::add, CountMinSketch::merge,
+                            CountMinSketch::heavyHitters,
+                            Collector.Characteristics.UNORDERED);
+    }
+}
@@ -1,19 +1,101 @@
 package support;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.StringReader;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 /**
  * Process all files test/solutions/*.java into
  * corresponding files in test/exercises/*.java.
+ *
+ * Usage: Grind [-j [threads]] [-r] [-incremental] [-watch] [-mmap] [-check] [-stats]
+ *
+ * With -j, files are processed concurrently on a fixed pool of the given
+ * number of threads (default: the number of available processors). Console
+ * output is still reported in input order, and a failure on one file is
+ * reported without aborting the rest of the run. When the runtime supports
+ * virtual threads, each file gets its own virtual thread and the thread count
+ * instead limits how many files are in flight at once.
+ *
+ * With -r, test/solutions is processed recursively, and the directory
+ * structure is mirrored into test/exercises. Declarations of subpackages of
+ * solutions, and imports from solutions and its subpackages, are rewritten
+ * to the corresponding packages of exercises.
+ *
+ * With -incremental, a manifest of input and output hashes is kept in
+ * .grind-manifest, and files whose solution is unchanged since the last run
+ * (and whose exercise has not been touched since) are skipped rather than
+ * rewritten. The manifest is discarded if the rules version or the pipeline
+ * differs. Bump RULES_VERSION whenever the transformation rules change.
+ *
+ * With -watch, after the initial run Grind stays resident and watches
+ * test/solutions, regenerating only the files that change. Bursts of events
+ * (editors often write a file more than once per save) are coalesced until
+ * the directory has been quiet for DEBOUNCE_MILLIS.
+ *
+ * With -mmap, files are transformed as bytes by ByteTransformer instead of
+ * being decoded into lines. Line terminators are then preserved from the
+ * input instead of being normalized.
+ *
+ * In either mode, a file with no markers other than its package declaration
+ * is copied with FileChannel.transferTo instead of being transformed, with
+ * only the package declaration rewritten. Such files are copied byte for
+ * byte, including their line terminators.
+ *
+ * Every output is written to a temporary file and then atomically moved
+ * into place, so a reader never sees a partially written exercise, and an
+ * interrupted run leaves the previous version intact. The line pipeline
+ * builds the whole output in memory and writes it, as UTF-8, in one go.
+ *
+ * With -check, the generated exercises are compiled in-process afterwards
+ * (see CompileCheck), and compile errors make the run fail. In watch mode,
+ * each regenerated batch is checked.
+ *
+ * With -stats, a table of the slowest files and the run totals (bytes,
+ * lines kept and removed, markers, and time spent decoding, transforming
+ * and writing) is printed at the end of the run, and the same counters are
+ * published as the MBean support:type=GrindStats for the life of the JVM.
  */
 public class Grind {
+    /*
+     * Sink and subst are the original, straightforward statement of the
+     * transformation rules. Transformer applies the same rules in a single
+     * pass and is what transform() uses; these are kept as the reference.
+     */
     static class Sink implements Consumer<String> {
         boolean removing = false;
         final PrintStream out;
@@ -29,36 +111,378 @@ public class Grind {
         }
     }
 
+    static final String RULES_VERSION = "5";
+    static final long DEBOUNCE_MILLIS = 20;
+    static final String LINE_SEPARATOR = System.lineSeparator();
+
+    final Path solutionsDir = Paths.get("test", "solutions");
+    final Path exercisesDir = Paths.get("test", "exercises");
+
+    /** Number of worker threads; 1 means process files sequentially. */
+    int threads = 1;
+
+    /** Whether to process subdirectories of solutionsDir. */
+    boolean recursive = false;
+
+    /** Manifest used to skip unchanged files; null unless incremental. */
+    Manifest manifest;
+
+    /** Whether to use the memory-mapped byte pipeline. */
+    boolean mapped = false;
+
+    /** Compiles the outputs after each run; null unless checking. */
+    CompileCheck compileCheck;
+
+    final GrindStats stats = new GrindStats();
+
+    /** Whether to print the stats summary and register the MBean. */
+    boolean reportStats = false;
+
     String subst(String line) {
         return line.replace("package solutions;", "package exercises;")
+                   .replace("package solutions.", "package exercises.")
+                   .replace("import solutions.", "import exercises.")
+                   .replace("import static solutions.", "import static exercises.")
                    .replace("@Test", "@Test @Ignore")
                    .replace("//UNCOMMENT//", "")
                    .replaceFirst("^(.*)//TODO//(.*)$", "$1$2 // TODO");
     }
-    
-    void processFile(Path input) {
-        Path output = Paths.get("test", "exercises")
-                           .resolve(input.getName(input.getNameCount() - 1));
+
+    /**
+     * Reports a file that could not be generated, in the same form as the
+     * report for one that was.
+     */
+    static void reportFailure(Object input, Object output, Throwable cause) {
         System.out.println(input + " => " + output);
-        
-        try (Stream<String> lines = Files.lines(input);
-             PrintStream out = new PrintStream(output.toFile())) {
-            lines.map(this::subst)
-                 .forEachOrdered(new Sink(out));
+        System.out.println("    FAILED: " + cause);
+    }
+
+    /**
+     * Returns the rules key for the manifest: RULES_VERSION, plus what
+     * else decides the bytes written. The byte pipeline keeps the input's
+     * line terminators, and the line pipeline writes LINE_SEPARATOR, so a
+     * switch of pipeline or platform regenerates everything.
+     */
+    String rulesKey() {
+        return RULES_VERSION + (mapped ? " mmap" : " lines " + LINE_SEPARATOR.replace("\r", "CR").replace("\n", "LF"));
+    }
+
+    Path outputFor(Path input) {
+        return exercisesDir.resolve(solutionsDir.relativize(input));
+    }
+
+    /**
+     * Maps input once, scans it for markers, and either copies it or
+     * transforms it from the same mapping with the byte or the line
+     * pipeline.
+     */
+    void transform(Path input, Path output, GrindStats.FileStats fs) throws IOException {
+        try (FileChannel inch = FileChannel.open(input, READ)) {
+            long t0 = System.nanoTime();
+            MappedByteBuffer buffer = ByteTransformer.map(input, inch);
+            fs.decodeNanos = System.nanoTime() - t0;
+            if (ByteTransformer.copyIfUnmarked(inch, buffer, output, fs)) {
+                return;
+            }
+            if (mapped) {
+                ByteTransformer.transform(buffer, output, fs);
+                return;
+            }
+
+            long t1 = System.nanoTime();
+            byte[] bytes = new byte[buffer.limit()];
+            buffer.get(bytes);
+            fs.decodeNanos += System.nanoTime() - t1;
+            Transformer transformer = new Transformer();
+            ByteBuffer rendered = render(bytes, transformer, fs);
+            fs.bytesRead = bytes.length;
+            fs.bytesWritten = rendered.remaining();
+
+            long t2 = System.nanoTime();
+            try (AtomicOutput out = new AtomicOutput(output)) {
+                out.write(rendered);
+                out.commit();
+            }
+            fs.writeNanos = System.nanoTime() - t2;
+        }
+    }
+
+    /**
+     * Renders the contents of a solution file with the line pipeline. The
+     * time spent is added to fs, along with the transformer's counts.
+     *
+     * @return the exercise file's contents, encoded as UTF-8
+     */
+    static ByteBuffer render(byte[] bytes, Transformer transformer, GrindStats.FileStats fs)
+            throws CharacterCodingException {
+        long t0 = System.nanoTime();
+        String text = StandardCharsets.UTF_8.newDecoder()
+                                            .decode(ByteBuffer.wrap(bytes))
+                                            .toString();
+        long t1 = System.nanoTime();
+
+        StringBuilder sb = new StringBuilder(text.length());
+        new BufferedReader(new StringReader(text))
+            .lines()
+            .map(transformer::apply)
+            .filter(Objects::nonNull)
+            .forEachOrdered(line -> sb.append(line).append(LINE_SEPARATOR));
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(sb));
+        long t2 = System.nanoTime();
+
+        fs.linesKept += transformer.linesKept;
+        fs.linesRemoved += transformer.linesRemoved;
+        fs.markers += transformer.markers;
+        fs.decodeNanos += t1 - t0;
+        fs.transformNanos += t2 - t1;
+        return encoded;
+    }
+
+    /**
+     * Transforms input into output, unless the manifest shows that output
+     * is already current.
+     *
+     * @return true if output was written
+     */
+    boolean update(Path input, Path output) throws IOException {
+        if (recursive) {
+            Files.createDirectories(output.getParent());
+        }
+        GrindStats.FileStats fs = new GrindStats.FileStats(input);
+        if (manifest == null) {
+            transform(input, output, fs);
+            stats.add(fs);
+            return true;
+        }
+        String inputHash = Manifest.hash(input);
+        if (manifest.isCurrent(input, inputHash, output)) {
+            stats.skipped();
+            return false;
+        }
+        transform(input, output, fs);
+        stats.add(fs);
+        manifest.record(input, inputHash, output);
+        return true;
+    }
+
+    static String report(Path input, Path output, boolean written) {
+        return input + " => " + output + (written ? "" : " (up to date)");
+    }
+
+    void processFile(Path input) {
+        Path output = outputFor(input);
+        try {
+            System.out.println(report(input, output, update(input, output)));
         } catch (IOException ioe) {
             throw new UncheckedIOException(ioe);
         }
     }
-    
-    void run() throws IOException {
-        Path dir = Paths.get("test", "solutions");
-        try (Stream<Path> paths = Files.list(dir)) {
-            paths.filter(p -> p.toString().endsWith(".java"))
-                 .forEachOrdered(this::processFile);
+
+    /**
+     * Returns an executor for blocking tasks: one virtual thread per task if
+     * the runtime supports them (JDK 21 and later), otherwise a fixed pool
+     * of the given number of platform threads.
+     */
+    static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (ReflectiveOperationException roe) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * Processes the inputs concurrently, with at most {@code threads} files
+     * in flight at once. Results are collected in input order, so the console
+     * output is the same as for a sequential run.
+     *
+     * @return the number of files that failed
+     */
+    int processAll(List<Path> inputs) throws InterruptedException {
+        ExecutorService pool = newExecutor(threads);
+        Semaphore permits = new Semaphore(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (Path input : inputs) {
+                results.add(pool.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return update(input, outputFor(input));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            int failures = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                try {
+                    System.out.println(report(input, outputFor(input), results.get(i).get()));
+                } catch (ExecutionException ee) {
+                    reportFailure(input, outputFor(input), ee.getCause());
+                    failures++;
+                }
+            }
+            return failures;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    List<Path> listInputs(Path dir) throws IOException {
+        try (Stream<Path> paths = recursive ? Files.walk(dir) : Files.list(dir)) {
+            return paths.filter(p -> p.toString().endsWith(".java"))
+                        .filter(p -> !recursive || Files.isRegularFile(p))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the number of files that failed
+     */
+    int run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<Path> inputs = listInputs(solutionsDir);
+        if (manifest != null) {
+            manifest.load();
+        }
+        int failures = 0;
+        try {
+            if (threads > 1) {
+                failures = processAll(inputs);
+            } else {
+                inputs.forEach(this::processFile);
+            }
+        } finally {
+            if (manifest != null) {
+                manifest.save();
+            }
+        }
+        if (reportStats) {
+            stats.printSummary(System.out, System.nanoTime() - start);
+        }
+        return failures + check(inputs);
+    }
+
+    /**
+     * Compile-checks the outputs for the given inputs, if checking is enabled.
+     *
+     * @return 1 if there were compile errors, otherwise 0
+     */
+    int check(Collection<Path> inputs) throws IOException {
+        if (compileCheck == null || inputs.isEmpty()) {
+            return 0;
+        }
+        List<Path> outputs = inputs.stream()
+                                   .map(this::outputFor)
+                                   .filter(Files::isRegularFile)
+                                   .collect(Collectors.toList());
+        return compileCheck.check(outputs) > 0 ? 1 : 0;
+    }
+
+    /**
+     * Watches dir (and, if recursive, its subdirectories) and regenerates
+     * each solution file as it changes. Never returns normally unless the
+     * directory becomes inaccessible.
+     */
+    void watch(Path dir) throws IOException, InterruptedException {
+        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+            register(watcher, dir);
+            System.out.println("watching " + dir);
+            while (true) {
+                Set<Path> touched = new TreeSet<>();
+                WatchKey key = watcher.take();
+                while (key != null) {
+                    Path keyDir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            touched.addAll(listInputs(dir));
+                        } else {
+                            Path path = keyDir.resolve((Path) event.context());
+                            if (recursive && event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                                register(watcher, path);
+                                touched.addAll(listInputs(path));
+                            } else if (path.toString().endsWith(".java")) {
+                                touched.add(path);
+                            }
+                        }
+                    }
+                    if (!key.reset() && keyDir.equals(dir)) {
+                        return;
+                    }
+                    key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                for (Path input : touched) {
+                    if (!Files.isRegularFile(input)) {
+                        continue;
+                    }
+                    try {
+                        processFile(input);
+                    } catch (UncheckedIOException uioe) {
+                        reportFailure(input, outputFor(input), uioe.getCause());
+                    }
+                }
+                if (manifest != null) {
+                    manifest.save();
+                }
+                check(touched);
+            }
+        }
+    }
+
+    void register(WatchService watcher, Path dir) throws IOException {
+        if (!recursive) {
+            dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            return;
+        }
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                d.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            }
         }
     }
 
-    public static void main(String[] args) throws IOException {
-        new Grind().run();
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Grind grind = new Grind();
+        boolean watch = false;
+        boolean incremental = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j")) {
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    grind.threads = Integer.parseInt(args[++i]);
+                } else {
+                    grind.threads = Runtime.getRuntime().availableProcessors();
+                }
+            } else if (args[i].equals("-r")) {
+                grind.recursive = true;
+            } else if (args[i].equals("-incremental")) {
+                incremental = true;
+            } else if (args[i].equals("-mmap")) {
+                grind.mapped = true;
+            } else if (args[i].equals("-check")) {
+                grind.compileCheck = new CompileCheck(Paths.get("test"));
+            } else if (args[i].equals("-stats")) {
+                grind.reportStats = true;
+                grind.stats.register();
+            } else if (args[i].equals("-watch")) {
+                watch = true;
+            } else {
+                throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+        if (incremental) {
+            grind.manifest = new Manifest(Paths.get(".grind-manifest"), grind.rulesKey());
+        }
+        int failures = grind.run();
+        if (watch) {
+            grind.watch(grind.solutionsDir);
+        } else if (failures > 0) {
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,225 @@
+package support;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Microbenchmark for Grind's transformation strategies, run over synthetic
+ * solution files of various sizes.
+ *
+ * Usage: GrindBench [size ...]
+ *
+ * Sizes are in bytes, with an optional K or M suffix; the default is
+ * 1K 64K 1M 100M. Use a heap of at least 2g for the 100M case.
+ *
+ * Each strategy is warmed up and then timed over several iterations; the
+ * median throughput (MB/s of input) is reported, along with the bytes
+ * allocated per input line by the measuring thread, as reported by
+ * com.sun.management.ThreadMXBean. The strategies are:
+ *
+ *     subst+Sink   the reference implementation, Grind.subst and Grind.Sink
+ *     Transformer  Transformer.apply over lines already in memory
+ *     render       Grind.render: decode, transform, and encode a whole file
+ *     bytes        ByteTransformer over the encoded file
+ *
+ * This is a plain harness rather than JMH, since the project has no way to
+ * bring in JMH and its annotation processor; run it with -XX:+UseParallelGC
+ * or similar to keep GC noise down, and treat small differences with
+ * suspicion.
+ */
+public class GrindBench {
+    static final int WARMUP = 5;
+    static final int MEASURE = 10;
+    static final long MIN_ITERATION_NANOS = 200_000_000L;
+
+    /** A block of typical solution text, with one of each kind of marker. */
+    static final String[] TEMPLATE = {
+        "    /**",
+        "     * Compute something from the input, using a stream pipeline.",
+        "     */",
+        "    @Test",
+        "    public void x1_computeSomething() {",
+        "        List<String> input = List.of(\"alfa\", \"bravo\", \"charlie\");",
+        "",
+        "        //TODO//List<String> result = null;",
+        "        //BEGINREMOVE",
+        "        List<String> result =",
+        "            input.stream()",
+        "                 .map(String::toUpperCase)",
+        "                 .collect(Collectors.toList());",
+        "        //ENDREMOVE",
+        "        //UNCOMMENT//// TODO write code here",
+        "        assertEquals(List.of(\"ALFA\", \"BRAVO\", \"CHARLIE\"), result);",
+        "    }",
+        "    // Hint:",
+        "    // <editor-fold defaultstate=\"collapsed\">",
+        "    // Use map().",
+        "    // </editor-fold>",
+        ""
+    };
+
+    interface Strategy {
+        long run(Input in) throws IOException;
+    }
+
+    static class Input {
+        final String[] lines;
+        final byte[] bytes;
+
+        Input(int size) {
+            List<String> list = new ArrayList<>();
+            list.add("package solutions;");
+            int length = list.get(0).length() + 1;
+            while (length < size) {
+                for (String line : TEMPLATE) {
+                    list.add(line);
+                    length += line.length() + 1;
+                }
+            }
+            lines = list.toArray(new String[0]);
+            bytes = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Discards everything written to it. */
+    static class NullChannel implements GatheringByteChannel {
+        long count;
+
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            count += n;
+            return n;
+        }
+
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long n = 0;
+            for (int i = offset; i < offset + length; i++) {
+                n += write(srcs[i]);
+            }
+            return n;
+        }
+
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        public boolean isOpen() { return true; }
+        public void close() { }
+    }
+
+    static final PrintStream NULL_PRINT_STREAM = new PrintStream(new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    });
+
+    static long substAndSink(Input in) {
+        Grind grind = new Grind();
+        Grind.Sink sink = new Grind.Sink(NULL_PRINT_STREAM);
+        long n = 0;
+        for (String line : in.lines) {
+            String s = grind.subst(line);
+            sink.accept(s);
+            n += s.length();
+        }
+        return n;
+    }
+
+    static long transformer(Input in) {
+        Transformer t = new Transformer();
+        long n = 0;
+        for (String line : in.lines) {
+            String s = t.apply(line);
+            if (s != null) {
+                n += s.length();
+            }
+        }
+        return n;
+    }
+
+    static long render(Input in) throws IOException {
+        return Grind.render(in.bytes, new Transformer(), new GrindStats.FileStats(null)).remaining();
+    }
+
+    static long bytes(Input in) throws IOException {
+        NullChannel out = new NullChannel();
+        new ByteTransformer(ByteBuffer.wrap(in.bytes), out).run();
+        return out.count;
+    }
+
+    static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    long blackhole;
+
+    /**
+     * Runs the strategy enough times to fill MIN_ITERATION_NANOS.
+     *
+     * @return { elapsed nanos, bytes allocated, number of runs }
+     */
+    long[] iteration(Strategy strategy, Input in) throws IOException {
+        long tid = Thread.currentThread().getId();
+        long alloc0 = THREADS.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+        long runs = 0;
+        long elapsed;
+        do {
+            blackhole += strategy.run(in);
+            runs++;
+            elapsed = System.nanoTime() - t0;
+        } while (elapsed < MIN_ITERATION_NANOS);
+        long alloc = THREADS.getThreadAllocatedBytes(tid) - alloc0;
+        return new long[] { elapsed, alloc, runs };
+    }
+
+    void bench(String name, Strategy strategy, Input in) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            iteration(strategy, in);
+        }
+        double[] mbps = new double[MEASURE];
+        double allocPerLine = 0;
+        for (int i = 0; i < MEASURE; i++) {
+            long[] r = iteration(strategy, in);
+            mbps[i] = (double) in.bytes.length * r[2] / r[0] * 1e9 / 1e6;
+            allocPerLine += (double) r[1] / r[2] / in.lines.length / MEASURE;
+        }
+        Arrays.sort(mbps);
+        System.out.printf("%-12s %10d %10.1f %10.1f %10.1f %12.1f%n",
+                          name, in.bytes.length, mbps[0], mbps[MEASURE / 2], mbps[MEASURE - 1],
+                          allocPerLine);
+    }
+
+    static int parseSize(String s) {
+        String u = s.toUpperCase();
+        if (u.endsWith("K")) {
+            return Integer.parseInt(u.substring(0, u.length() - 1)) << 10;
+        } else if (u.endsWith("M")) {
+            return Integer.parseInt(u.substring(0, u.length() - 1)) << 20;
+        } else {
+            return Integer.parseInt(u);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String[] sizes = args.length > 0 ? args : new String[] { "1K", "64K", "1M", "100M" };
+        GrindBench bench = new GrindBench();
+        System.out.printf("%-12s %10s %10s %10s %10s %12s%n",
+                          "strategy", "bytes", "min MB/s", "med MB/s", "max MB/s", "alloc/line");
+        for (String size : sizes) {
+            Input in = new Input(parseSize(size));
+            bench.bench("subst+Sink", GrindBench::substAndSink, in);
+            bench.bench("Transformer", GrindBench::transformer, in);
+            bench.bench("render", GrindBench::render, in);
+            bench.bench("bytes", GrindBench::bytes, in);
+        }
+        System.out.println("(" + bench.blackhole + ")");
+    }
+}
@@ -0,0 +1,243 @@
+package support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Serves rendered exercise files over HTTP from memory, without writing
+ * them to disk. A request for /exercises/X.java renders test/solutions/X.java
+ * the same way Grind does.
+ *
+ * Usage: GrindServer [port] [threads]
+ *
+ * Rendered files are cached by the SHA-256 of the solution's contents, and
+ * the hash of each solution is cached by path. A WatchService on
+ * test/solutions drops the path entry (and its rendering) when a solution
+ * changes, so the next request re-reads and re-renders it; requests for
+ * unchanged files are answered without touching the disk. The hash is sent
+ * as the ETag, so clients that revalidate with If-None-Match get a 304.
+ * A request that fails is answered with a 500 and reported the way Grind
+ * reports a file it could not generate.
+ *
+ * Requests are handled on a virtual thread each when the runtime supports
+ * them, otherwise on a fixed pool. Render counters are published as the
+ * GrindStats MBean.
+ */
+public class GrindServer {
+    static final String PREFIX = "/exercises/";
+
+    /** A rendered exercise, with the hash of the solution it came from. */
+    static class Rendering {
+        final String hash;
+        final byte[] body;
+
+        Rendering(String hash, byte[] body) {
+            this.hash = hash;
+            this.body = body;
+        }
+    }
+
+    final Path solutionsDir;
+    final Map<Path, String> hashes = new ConcurrentHashMap<>();
+    final Map<String, Rendering> renderings = new ConcurrentHashMap<>();
+    final GrindStats stats = new GrindStats();
+
+    /** Incremented on every invalidation; see get(). */
+    final AtomicLong generation = new AtomicLong();
+
+    GrindServer(Path solutionsDir) {
+        this.solutionsDir = solutionsDir.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the rendering of the given solution file, from the cache if
+     * possible.
+     *
+     * @throws NoSuchFileException if there's no such solution
+     */
+    Rendering get(Path input) throws IOException {
+        String hash = hashes.get(input);
+        if (hash != null) {
+            Rendering r = renderings.get(hash);
+            if (r != null) {
+                return r;
+            }
+        }
+
+        long gen = generation.get();
+        byte[] bytes = Files.readAllBytes(input);
+        String newHash = Manifest.hash(bytes);
+        Rendering r = renderings.get(newHash);
+        if (r == null) {
+            GrindStats.FileStats fs = new GrindStats.FileStats(input);
+            ByteBuffer buf = Grind.render(bytes, new Transformer(), fs);
+            byte[] body = new byte[buf.remaining()];
+            buf.get(body);
+            fs.bytesRead = bytes.length;
+            fs.bytesWritten = body.length;
+            stats.add(fs);
+            r = new Rendering(newHash, body);
+            renderings.put(newHash, r);
+        }
+        hashes.put(input, newHash);
+        if (generation.get() != gen) {
+            // the file may have changed after it was read; don't trust the
+            // hash, and don't keep a rendering that nothing may refer to
+            hashes.remove(input, newHash);
+            renderings.remove(newHash, r);
+        }
+        return r;
+    }
+
+    void invalidate(Path input) {
+        generation.incrementAndGet();
+        String hash = hashes.remove(input);
+        if (hash != null) {
+            renderings.remove(hash);
+        }
+    }
+
+    void handle(HttpExchange ex) {
+        try {
+            if (!ex.getRequestMethod().equals("GET") && !ex.getRequestMethod().equals("HEAD")) {
+                send(ex, 405, "method not allowed");
+                return;
+            }
+            String path = ex.getRequestURI().getPath();
+            Path input = path.startsWith(PREFIX)
+                ? solutionsDir.resolve(path.substring(PREFIX.length())).normalize()
+                : null;
+            if (input == null || !input.startsWith(solutionsDir) || !input.toString().endsWith(".java")) {
+                send(ex, 404, "not found");
+                return;
+            }
+
+            Rendering r;
+            try {
+                r = get(input);
+            } catch (NoSuchFileException nsfe) {
+                send(ex, 404, "not found");
+                return;
+            }
+
+            String etag = '"' + r.hash + '"';
+            ex.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                ex.sendResponseHeaders(304, -1);
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Type", "text/x-java; charset=utf-8");
+            if (ex.getRequestMethod().equals("HEAD")) {
+                ex.sendResponseHeaders(200, -1);
+                return;
+            }
+            ex.sendResponseHeaders(200, r.body.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(r.body);
+            }
+        } catch (IOException | RuntimeException e) {
+            int status = ex.getResponseCode();
+            if (status == -1) {
+                status = 500;
+                try {
+                    send(ex, status, "internal error");
+                } catch (IOException ioe) {
+                    // the client has gone; nothing more to do
+                }
+            }
+            Grind.reportFailure(ex.getRequestMethod() + " " + ex.getRequestURI(), status, e);
+        } finally {
+            ex.close();
+        }
+    }
+
+    static void send(HttpExchange ex, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Invalidates cache entries as solution files change. Runs until the
+     * directory becomes inaccessible.
+     */
+    void watch() throws IOException, InterruptedException {
+        try (WatchService watcher = solutionsDir.getFileSystem().newWatchService()) {
+            try (Stream<Path> dirs = Files.walk(solutionsDir)) {
+                for (Path d : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                    d.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                }
+            }
+            while (true) {
+                WatchKey key = watcher.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        generation.incrementAndGet();
+                        hashes.clear();
+                        renderings.clear();
+                    } else {
+                        Path path = dir.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            path.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                        }
+                        invalidate(path);
+                    }
+                }
+                if (!key.reset() && dir.equals(solutionsDir)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+
+        GrindServer server = new GrindServer(Paths.get("test", "solutions"));
+        server.stats.register();
+
+        ExecutorService executor = Grind.newExecutor(threads);
+        HttpServer http = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/", server::handle);
+        http.setExecutor(executor);
+        http.start();
+        System.out.println("serving " + server.solutionsDir + " at http://localhost:"
+                           + http.getAddress().getPort() + PREFIX);
+        try {
+            server.watch();
+        } finally {
+            http.stop(0);
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package support;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-file and aggregate metrics for Grind. Each file's counters are
+ * gathered in a FileStats by the thread processing it, then added here;
+ * the aggregates can be updated concurrently. The same numbers are printed
+ * as a summary table and exposed as the MBean support:type=GrindStats.
+ */
+public class GrindStats implements GrindStatsMBean {
+    static final int SLOWEST = 10;
+    static final String OBJECT_NAME = "support:type=GrindStats";
+    static final String ROW_FORMAT = "%-44s %-5s %10s %10s %7s %7s %7s %8s %8s %8s%n";
+
+    /**
+     * Counters for one file. Mode is "lines" or "mmap" for the two
+     * transformation pipelines, or "copy" for a file copied by transferTo.
+     */
+    static class FileStats {
+        final Path input;
+        String mode = "lines";
+        long bytesRead;
+        long bytesWritten;
+        long linesKept;
+        long linesRemoved;
+        long markers;
+        long decodeNanos;
+        long transformNanos;
+        long writeNanos;
+
+        FileStats(Path input) {
+            this.input = input;
+        }
+
+        long totalNanos() {
+            return decodeNanos + transformNanos + writeNanos;
+        }
+
+        String row() {
+            return String.format(ROW_FORMAT, input, mode, bytesRead, bytesWritten,
+                                 linesKept, linesRemoved, markers,
+                                 millis(decodeNanos), millis(transformNanos), millis(writeNanos));
+        }
+    }
+
+    final LongAdder filesProcessed = new LongAdder();
+    final LongAdder filesSkipped = new LongAdder();
+    final LongAdder filesCopied = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+    final LongAdder linesKept = new LongAdder();
+    final LongAdder linesRemoved = new LongAdder();
+    final LongAdder markers = new LongAdder();
+    final LongAdder decodeNanos = new LongAdder();
+    final LongAdder transformNanos = new LongAdder();
+    final LongAdder writeNanos = new LongAdder();
+
+    // min-heap on time, so the fastest of the slowest is evicted first
+    final PriorityQueue<FileStats> slowest =
+        new PriorityQueue<>(Comparator.comparingLong(FileStats::totalNanos));
+
+    void add(FileStats fs) {
+        filesProcessed.increment();
+        if (fs.mode.equals("copy")) {
+            filesCopied.increment();
+        }
+        bytesRead.add(fs.bytesRead);
+        bytesWritten.add(fs.bytesWritten);
+        linesKept.add(fs.linesKept);
+        linesRemoved.add(fs.linesRemoved);
+        markers.add(fs.markers);
+        decodeNanos.add(fs.decodeNanos);
+        transformNanos.add(fs.transformNanos);
+        writeNanos.add(fs.writeNanos);
+        synchronized (slowest) {
+            slowest.add(fs);
+            if (slowest.size() > SLOWEST) {
+                slowest.remove();
+            }
+        }
+    }
+
+    void skipped() {
+        filesSkipped.increment();
+    }
+
+    static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    List<FileStats> slowestFiles() {
+        List<FileStats> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        list.sort(Comparator.comparingLong(FileStats::totalNanos).reversed());
+        return list;
+    }
+
+    /**
+     * Prints the slowest files and the totals for the run, with throughput
+     * computed over the given wall-clock time.
+     */
+    void printSummary(PrintStream out, long wallNanos) {
+        out.println();
+        out.printf(ROW_FORMAT, "file", "mode", "read", "written", "kept", "removed",
+                   "markers", "decode", "xform", "write");
+        slowestFiles().forEach(fs -> out.print(fs.row()));
+        out.printf(ROW_FORMAT, "TOTAL", "", bytesRead.sum(), bytesWritten.sum(),
+                   linesKept.sum(), linesRemoved.sum(), markers.sum(),
+                   millis(decodeNanos.sum()), millis(transformNanos.sum()), millis(writeNanos.sum()));
+        double seconds = wallNanos / 1e9;
+        out.printf("%d files processed (%d copied), %d skipped in %.3f s; %.1f MB/s read, %.1f MB/s written%n",
+                   filesProcessed.sum(), filesCopied.sum(), filesSkipped.sum(), seconds,
+                   bytesRead.sum() / 1e6 / seconds, bytesWritten.sum() / 1e6 / seconds);
+    }
+
+    /**
+     * Registers this object with the platform MBean server. Failure is
+     * reported but is not fatal.
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                             .registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException jme) {
+            System.out.println("warning: can't register " + OBJECT_NAME + ": " + jme);
+        }
+    }
+
+    public long getFilesProcessed()  { return filesProcessed.sum(); }
+    public long getFilesSkipped()    { return filesSkipped.sum(); }
+    public long getFilesCopied()     { return filesCopied.sum(); }
+    public long getBytesRead()       { return bytesRead.sum(); }
+    public long getBytesWritten()    { return bytesWritten.sum(); }
+    public long getLinesKept()       { return linesKept.sum(); }
+    public long getLinesRemoved()    { return linesRemoved.sum(); }
+    public long getMarkersHit()      { return markers.sum(); }
+    public long getDecodeMillis()    { return TimeUnit.NANOSECONDS.toMillis(decodeNanos.sum()); }
+    public long getTransformMillis() { return TimeUnit.NANOSECONDS.toMillis(transformNanos.sum()); }
+    public long getWriteMillis()     { return TimeUnit.NANOSECONDS.toMillis(writeNanos.sum()); }
+
+    public String[] getSlowestFiles() {
+        return slowestFiles().stream()
+                             .map(fs -> fs.row().trim())
+                             .toArray(String[]::new);
+    }
+
+    public void reset() {
+        for (LongAdder a : new LongAdder[] {
+                filesProcessed, filesSkipped, filesCopied, bytesRead, bytesWritten,
+                linesKept, linesRemoved, markers, decodeNanos, transformNanos, writeNanos }) {
+            a.reset();
+        }
+        synchronized (slowest) {
+            slowest.clear();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package support;
+
+/**
+ * Management interface for Grind's throughput counters. Times are
+ * cumulative across all files, and so may exceed wall-clock time when
+ * files are processed concurrently.
+ */
+public interface GrindStatsMBean {
+    long getFilesProcessed();
+    long getFilesSkipped();
+    long getFilesCopied();
+    long getBytesRead();
+    long getBytesWritten();
+    long getLinesKept();
+    long getLinesRemoved();
+    long getMarkersHit();
+    long getDecodeMillis();
+    long getTransformMillis();
+    long getWriteMillis();
+
+    /**
+     * Returns the slowest files processed so far, one per line, formatted
+     * as in the summary table.
+     */
+    String[] getSlowestFiles();
+
+    void reset();
+}
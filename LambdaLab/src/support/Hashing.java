@@ -0,0 +1,41 @@
+package support;
+
+/**
+ * A 64-bit hash for words, for the sketches (HyperLogLog, CountMinSketch)
+ * that need more bits, and better mixing, than String.hashCode() gives.
+ *
+ * The hash is FNV-1a over the chars of the word, followed by the MurmurHash3
+ * 64-bit finalizer, so it's the same for a String and for any other
+ * CharSequence with the same chars, such as a Tokenizer view. It is not a
+ * cryptographic hash.
+ */
+public final class Hashing {
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() { }
+
+    /** Returns the 64-bit hash of the word. */
+    public static long hash64(CharSequence word) {
+        return hash64(word, 0L);
+    }
+
+    /** Returns the 64-bit hash of the word, varied by the seed. */
+    public static long hash64(CharSequence word, long seed) {
+        long h = FNV_OFFSET ^ seed;
+        for (int i = 0, n = word.length(); i < n; i++) {
+            h = (h ^ word.charAt(i)) * FNV_PRIME;
+        }
+        return fmix64(h ^ word.length());
+    }
+
+    /** The MurmurHash3 finalizer: every input bit affects every output bit. */
+    static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,497 @@
+package support;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An inverted index over the words of a Corpus, built once and saved to a
+ * file, which is then memory-mapped for queries. Term, AND, OR and phrase
+ * queries are answered from the index alone, as line numbers (counting
+ * from 0); lineStart() gives each line's offset in the corpus, so matching
+ * lines can be read without re-tokenizing the text.
+ *
+ * Words are as given by Tokenizer, so the same as splitAsStream with the
+ * "[- .:,]+" separators, less the empty words. An index can be built
+ * case-folded, in which case queries are case-folded too.
+ *
+ * For each word the index holds a posting list of its occurrences, as
+ * (line, position in line) pairs in order. Each pair is written as two
+ * varints: the line as a delta from the previous occurrence's line, then
+ * the position, as a delta from the previous position if on the same
+ * line. The words are kept sorted, in a directory searched by binary
+ * search.
+ *
+ * File layout, big-endian:
+ *
+ *     header      magic, version, flags, term count (ints);
+ *                 line count, and offsets of the directory, words,
+ *                 postings and line starts (longs)
+ *     directory   per word, in UTF-8 byte order: word offset (long),
+ *                 word length (int), postings offset, postings length and
+ *                 occurrence count (longs)
+ *     words       UTF-8 bytes of the words
+ *     postings    varint-encoded posting lists
+ *     line starts byte offset in the corpus of each line (longs)
+ */
+public final class InvertedIndex {
+    static final int MAGIC = 0x4c494458;    // "LIDX"
+    static final int VERSION = 1;
+    static final int FOLD_CASE = 1;
+    static final int HEADER_SIZE = 4 * 4 + 5 * 8;
+    static final int ENTRY_SIZE = 8 + 4 + 8 + 8 + 8;
+
+    final Corpus file;
+    final boolean foldCase;
+    final int termCount;
+    final long lineCount;
+    final long directory;
+    final long words;
+    final long postings;
+    final long lines;
+
+    InvertedIndex(Corpus file) throws IOException {
+        this.file = file;
+        if (file.size() < HEADER_SIZE || readInt(0) != MAGIC) {
+            throw new IOException(file.path() + ": not an index file");
+        }
+        if (readInt(4) != VERSION) {
+            throw new IOException(file.path() + ": index version " + readInt(4) + ", expected " + VERSION);
+        }
+        foldCase = (readInt(8) & FOLD_CASE) != 0;
+        termCount = readInt(12);
+        lineCount = readLong(16);
+        directory = readLong(24);
+        words = readLong(32);
+        postings = readLong(40);
+        lines = readLong(48);
+    }
+
+    /**
+     * Opens an index file written by build().
+     */
+    public static InvertedIndex open(Path path) throws IOException {
+        return new InvertedIndex(Corpus.of(path));
+    }
+
+    // ---------- building ----------
+
+    /** A growable array of varints. */
+    static final class VarintBuffer {
+        byte[] bytes = new byte[8];
+        int size;
+
+        void write(long v) {
+            if (size + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 10));
+            }
+            while ((v & ~0x7fL) != 0) {
+                bytes[size++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            bytes[size++] = (byte) v;
+        }
+    }
+
+    /**
+     * Indexes the corpus, writes the index to the given file, and opens
+     * it.
+     */
+    public static InvertedIndex build(Corpus corpus, Path path, boolean foldCase) throws IOException {
+        Tokenizer.Dictionary raw = new Tokenizer.Dictionary();
+        Tokenizer.Dictionary terms = foldCase ? new Tokenizer.Dictionary() : raw;
+        int[] rawToTerm = new int[256];
+        List<VarintBuffer> lists = new ArrayList<>();
+        long[] lastLine = new long[256];
+        int[] lastPos = new int[256];
+        long[] counts = new long[256];
+
+        Tokenizer tokenizer = new Tokenizer(corpus);
+        long line = -1;
+        int pos = 0;
+        while (tokenizer.next()) {
+            CharSequence token = tokenizer.token();
+            if (token.length() == 0) {
+                continue;
+            }
+            if (tokenizer.line() != line) {
+                line = tokenizer.line();
+                pos = 0;
+            }
+            int id = raw.intern(token);
+            if (foldCase) {
+                if (id >= rawToTerm.length) {
+                    rawToTerm = Arrays.copyOf(rawToTerm, rawToTerm.length * 2);
+                }
+                if (id == raw.size() - 1 && rawToTerm[id] == 0) {
+                    // first sighting: fold once, and remember the folded id (+1)
+                    rawToTerm[id] = terms.intern(raw.word(id).toLowerCase(Locale.ROOT)) + 1;
+                }
+                id = rawToTerm[id] - 1;
+            }
+            if (id == lists.size()) {
+                lists.add(new VarintBuffer());
+                if (id >= counts.length) {
+                    lastLine = Arrays.copyOf(lastLine, counts.length * 2);
+                    lastPos = Arrays.copyOf(lastPos, counts.length * 2);
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+                }
+            }
+            VarintBuffer list = lists.get(id);
+            if (counts[id] == 0 || line != lastLine[id]) {
+                list.write(counts[id] == 0 ? line : line - lastLine[id]);
+                list.write(pos);
+            } else {
+                list.write(0);
+                list.write(pos - lastPos[id] - 1);
+            }
+            lastLine[id] = line;
+            lastPos[id] = pos;
+            counts[id]++;
+            pos++;
+        }
+
+        // sort the terms by their UTF-8 bytes
+        Tokenizer.Dictionary dict = terms;
+        Integer[] order = new Integer[dict.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(dict.arena, dict.offsets[a], dict.offsets[a + 1],
+                                                            dict.arena, dict.offsets[b], dict.offsets[b + 1]));
+
+        long[] lineStarts = lineStarts(corpus);
+        long directoryOffset = HEADER_SIZE;
+        long wordsOffset = directoryOffset + (long) order.length * ENTRY_SIZE;
+        long postingsOffset = wordsOffset + dict.arenaSize;
+        long postingsSize = 0;
+        for (VarintBuffer list : lists) {
+            postingsSize += list.size;
+        }
+        long linesOffset = postingsOffset + postingsSize;
+
+        try (AtomicOutput out = new AtomicOutput(path)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(foldCase ? FOLD_CASE : 0).putInt(order.length)
+                  .putLong(lineStarts.length)
+                  .putLong(directoryOffset).putLong(wordsOffset).putLong(postingsOffset).putLong(linesOffset);
+            header.flip();
+            out.write(header);
+
+            ByteBuffer entries = ByteBuffer.allocate(order.length * ENTRY_SIZE);
+            long wordOffset = 0;
+            long postingOffset = 0;
+            for (int id : order) {
+                int length = dict.offsets[id + 1] - dict.offsets[id];
+                entries.putLong(wordOffset).putInt(length)
+                       .putLong(postingOffset).putLong(lists.get(id).size).putLong(counts[id]);
+                wordOffset += length;
+                postingOffset += lists.get(id).size;
+            }
+            entries.flip();
+            out.write(entries);
+
+            for (int id : order) {
+                out.write(ByteBuffer.wrap(dict.arena, dict.offsets[id], dict.offsets[id + 1] - dict.offsets[id]));
+            }
+            for (int id : order) {
+                out.write(ByteBuffer.wrap(lists.get(id).bytes, 0, lists.get(id).size));
+            }
+            ByteBuffer starts = ByteBuffer.allocate(lineStarts.length * 8);
+            starts.asLongBuffer().put(lineStarts);
+            out.write(starts);
+            out.commit();
+        }
+        return open(path);
+    }
+
+    /**
+     * Returns the offset of each line of the corpus, with lines as for
+     * BufferedReader.lines().
+     */
+    static long[] lineStarts(Corpus corpus) {
+        long[] starts = new long[64];
+        int n = 0;
+        long size = corpus.size();
+        long p = 0;
+        while (p < size) {
+            if (n == starts.length) {
+                starts = Arrays.copyOf(starts, n * 2);
+            }
+            starts[n++] = p;
+            while (p < size) {
+                byte b = corpus.byteAt(p++);
+                if (b == '\n') {
+                    break;
+                }
+                if (b == '\r') {
+                    if (p < size && corpus.byteAt(p) == '\n') {
+                        p++;
+                    }
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(starts, n);
+    }
+
+    // ---------- reading ----------
+
+    int readInt(long at) {
+        return (file.byteAt(at) & 0xff) << 24 | (file.byteAt(at + 1) & 0xff) << 16
+             | (file.byteAt(at + 2) & 0xff) << 8 | (file.byteAt(at + 3) & 0xff);
+    }
+
+    long readLong(long at) {
+        return (long) readInt(at) << 32 | (readInt(at + 4) & 0xffffffffL);
+    }
+
+    /** Returns the number of distinct words. */
+    public int termCount() {
+        return termCount;
+    }
+
+    /** Returns the number of lines in the corpus. */
+    public long lineCount() {
+        return lineCount;
+    }
+
+    /** Returns the offset in the corpus of the start of the line. */
+    public long lineStart(long line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("line " + line + ", line count " + lineCount);
+        }
+        return readLong(lines + line * 8);
+    }
+
+    /**
+     * Returns the directory entry of the word, or -1 if it isn't indexed.
+     */
+    long find(String word) {
+        byte[] key = (foldCase ? word.toLowerCase(Locale.ROOT) : word).getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long entry = directory + (long) mid * ENTRY_SIZE;
+            long at = words + readLong(entry);
+            int length = readInt(entry + 8);
+            int cmp = 0;
+            for (int i = 0; i < Math.min(length, key.length) && cmp == 0; i++) {
+                cmp = Integer.compare(file.byteAt(at + i) & 0xff, key[i] & 0xff);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compare(length, key.length);
+            }
+            if (cmp == 0) {
+                return entry;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the number of occurrences of the word. */
+    public long count(String word) {
+        long entry = find(word);
+        return entry < 0 ? 0 : readLong(entry + 28);
+    }
+
+    /**
+     * The decoded postings of one word: parallel arrays of line and
+     * position, in order.
+     */
+    static final class Postings {
+        static final Postings EMPTY = new Postings(new long[0], new int[0]);
+
+        final long[] lines;
+        final int[] positions;
+
+        Postings(long[] lines, int[] positions) {
+            this.lines = lines;
+            this.positions = positions;
+        }
+
+        /** Returns true if the word occurs at the given line and position. */
+        boolean contains(long line, int position) {
+            int lo = 0;
+            int hi = lines.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = lines[mid] != line ? Long.compare(lines[mid], line)
+                                             : Integer.compare(positions[mid], position);
+                if (cmp == 0) {
+                    return true;
+                } else if (cmp < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return false;
+        }
+
+        /** Returns the distinct lines, in order. */
+        long[] distinctLines() {
+            long[] out = new long[lines.length];
+            int n = 0;
+            for (long line : lines) {
+                if (n == 0 || out[n - 1] != line) {
+                    out[n++] = line;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+    }
+
+    Postings postings(String word) {
+        long entry = find(word);
+        if (entry < 0) {
+            return Postings.EMPTY;
+        }
+        long at = postings + readLong(entry + 12);
+        int count = (int) readLong(entry + 28);
+        long[] lineList = new long[count];
+        int[] positionList = new int[count];
+        long line = 0;
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = file.byteAt(at++);
+                v |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            int p = 0;
+            shift = 0;
+            do {
+                b = file.byteAt(at++);
+                p |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (i == 0 || v != 0) {
+                line += v;
+                pos = p;
+            } else {
+                pos += p + 1;
+            }
+            lineList[i] = line;
+            positionList[i] = pos;
+        }
+        return new Postings(lineList, positionList);
+    }
+
+    /** Returns the lines containing the word. */
+    public long[] lines(String word) {
+        return postings(word).distinctLines();
+    }
+
+    /** Returns the lines containing all the words. */
+    public long[] and(String... words) {
+        if (words.length == 0) {
+            return new long[0];
+        }
+        long[] result = lines(words[0]);
+        for (int i = 1; i < words.length && result.length > 0; i++) {
+            long[] other = lines(words[i]);
+            long[] out = new long[Math.min(result.length, other.length)];
+            int n = 0;
+            for (int a = 0, b = 0; a < result.length && b < other.length; ) {
+                if (result[a] < other[b]) {
+                    a++;
+                } else if (result[a] > other[b]) {
+                    b++;
+                } else {
+                    out[n++] = result[a];
+                    a++;
+                    b++;
+                }
+            }
+            result = Arrays.copyOf(out, n);
+        }
+        return result;
+    }
+
+    /** Returns the lines containing any of the words. */
+    public long[] or(String... words) {
+        long[] result = new long[0];
+        for (String word : words) {
+            long[] other = lines(word);
+            long[] out = new long[result.length + other.length];
+            int n = 0;
+            int a = 0;
+            int b = 0;
+            while (a < result.length || b < other.length) {
+                long next = b == other.length || (a < result.length && result[a] <= other[b])
+                    ? result[a] : other[b];
+                if (a < result.length && result[a] == next) {
+                    a++;
+                }
+                if (b < other.length && other[b] == next) {
+                    b++;
+                }
+                out[n++] = next;
+            }
+            result = Arrays.copyOf(out, n);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lines containing the words in sequence. Words don't
+     * match across line breaks.
+     */
+    public long[] phrase(String... words) {
+        if (words.length == 0) {
+            return new long[0];
+        }
+        Postings[] lists = new Postings[words.length];
+        for (int i = 0; i < words.length; i++) {
+            lists[i] = postings(words[i]);
+            if (lists[i].lines.length == 0) {
+                return new long[0];
+            }
+        }
+        Postings first = lists[0];
+        long[] out = new long[first.lines.length];
+        int n = 0;
+        for (int j = 0; j < first.lines.length; j++) {
+            long line = first.lines[j];
+            if (n > 0 && out[n - 1] == line) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 1; i < words.length && match; i++) {
+                match = lists[i].contains(line, first.positions[j] + i);
+            }
+            if (match) {
+                out[n++] = line;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Returns the lines containing the phrase, split into words as the
+     * corpus was.
+     */
+    public long[] phrase(String text) {
+        List<String> list = new ArrayList<>();
+        for (String w : text.split("[" + Tokenizer.SEPARATORS + "]+")) {
+            if (!w.isEmpty()) {
+                list.add(w);
+            }
+        }
+        return phrase(list.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,143 @@
+package support;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the lines of a range of a Corpus, giving the same
+ * lines as BufferedReader.lines(). Lines end at \n, \r or \r\n, and are
+ * decoded as UTF-8.
+ *
+ * Unlike the spliterator of BufferedReader.lines(), which can only split
+ * off batches of lines it has already read, this one splits its byte range
+ * at the midpoint, moved forward to just past the next line terminator, so
+ * both halves can be read in parallel from the mapping. The size estimate
+ * is the remaining bytes divided by the average line length seen in a
+ * sample at the start of the range.
+ */
+final class LineSpliterator implements Spliterator<String> {
+    static final int MIN_SPLIT = 1 << 16;
+    static final int SAMPLE = 1 << 12;
+
+    final Corpus corpus;
+    long pos;
+    long end;
+    final double bytesPerLine;
+    byte[] buffer = new byte[256];
+
+    LineSpliterator(Corpus corpus, long from, long to) {
+        this(corpus, from, to, sample(corpus, from, to));
+    }
+
+    LineSpliterator(Corpus corpus, long from, long to, double bytesPerLine) {
+        this.corpus = corpus;
+        this.pos = from;
+        this.end = to;
+        this.bytesPerLine = bytesPerLine;
+    }
+
+    /**
+     * Returns the average line length in the first few KB of the range.
+     */
+    static double sample(Corpus corpus, long from, long to) {
+        long limit = Math.min(to, from + SAMPLE);
+        int lines = 0;
+        for (long p = from; p < limit; p++) {
+            byte b = corpus.byteAt(p);
+            if (b == '\n' || (b == '\r' && (p + 1 == to || corpus.byteAt(p + 1) != '\n'))) {
+                lines++;
+            }
+        }
+        return lines == 0 ? Math.max(1, limit - from) : (double) (limit - from) / lines;
+    }
+
+    static boolean isNewline(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * Returns the index just past the line terminator at or after p, or end
+     * if there's none.
+     */
+    long nextLine(long p) {
+        while (p < end) {
+            byte b = corpus.byteAt(p++);
+            if (b == '\n') {
+                return p;
+            }
+            if (b == '\r') {
+                return p < end && corpus.byteAt(p) == '\n' ? p + 1 : p;
+            }
+        }
+        return end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (pos >= end) {
+            return false;
+        }
+        action.accept(readLine());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super String> action) {
+        while (pos < end) {
+            action.accept(readLine());
+        }
+    }
+
+    String readLine() {
+        long start = pos;
+        boolean ascii = true;
+        byte b = 0;
+        while (pos < end && !isNewline(b = corpus.byteAt(pos))) {
+            ascii &= b >= 0;
+            pos++;
+        }
+        long length = pos - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException(corpus.path() + ": line at " + start + " is too long");
+        }
+        if (pos < end) {
+            pos++;
+            if (b == '\r' && pos < end && corpus.byteAt(pos) == '\n') {
+                pos++;
+            }
+        }
+        int n = (int) length;
+        if (buffer.length < n) {
+            buffer = new byte[Math.max(n, buffer.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            buffer[i] = corpus.byteAt(start + i);
+        }
+        return new String(buffer, 0, n, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (end - pos < MIN_SPLIT) {
+            return null;
+        }
+        long mid = nextLine(pos + (end - pos) / 2);
+        if (mid >= end) {
+            return null;
+        }
+        LineSpliterator prefix = new LineSpliterator(corpus, pos, mid, bytesPerLine);
+        pos = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (long) Math.ceil((end - pos) / bytesPerLine);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+}
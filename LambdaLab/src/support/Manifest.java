@@ -0,0 +1,137 @@
+package support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records, for each input file Grind has processed, a hash of the input and
+ * a hash, size and modification time of the output it produced, together
+ * with the version of the transformation rules. A file whose input and
+ * output hashes still match and whose rules version is unchanged need not
+ * be regenerated.
+ *
+ * Safe for use by concurrent Grind workers.
+ */
+class Manifest {
+    static final String RULES_KEY = "rules";
+
+    final Path file;
+    final String rules;
+    final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    Manifest(Path file, String rules) {
+        this.file = file;
+        this.rules = rules;
+    }
+
+    /**
+     * Loads the manifest from its file. A missing file, or one written for a
+     * different rules version, yields an empty manifest.
+     */
+    Manifest load() throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        } catch (NoSuchFileException nsfe) {
+            return this;
+        }
+        if (rules.equals(props.getProperty(RULES_KEY))) {
+            props.stringPropertyNames().stream()
+                 .filter(k -> !k.equals(RULES_KEY))
+                 .forEach(k -> entries.put(k, props.getProperty(k)));
+        }
+        return this;
+    }
+
+    void save() throws IOException {
+        Properties props = new Properties();
+        props.putAll(entries);
+        props.setProperty(RULES_KEY, rules);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        props.store(bytes, "Grind manifest; do not edit");
+        try (AtomicOutput out = new AtomicOutput(file)) {
+            out.write(ByteBuffer.wrap(bytes.toByteArray()));
+            out.commit();
+        }
+    }
+
+    /**
+     * Returns true if output was generated from an input with the given hash
+     * and has not been modified since. The output is hashed again only if
+     * its size or modification time differs from the recorded one.
+     */
+    boolean isCurrent(Path input, String inputHash, Path output) throws IOException {
+        String entry = entries.get(input.toString());
+        if (entry == null) {
+            return false;
+        }
+        String[] fields = entry.split(" ");
+        if (!fields[0].equals(inputHash)) {
+            return false;
+        }
+        String stamp = stamp(output);
+        if (fields.length == 4 && stamp.equals(fields[2] + " " + fields[3])) {
+            return true;
+        }
+        if (!fields[1].equals(hash(output))) {
+            return false;
+        }
+        // touched but unchanged: remember the new stamp
+        entries.put(input.toString(), fields[0] + " " + fields[1] + " " + stamp);
+        return true;
+    }
+
+    void record(Path input, String inputHash, Path output) throws IOException {
+        entries.put(input.toString(), inputHash + " " + hash(output) + " " + stamp(output));
+    }
+
+    /**
+     * Returns the file's size and modification time in milliseconds, or
+     * "- -" if the file does not exist.
+     */
+    static String stamp(Path path) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return attrs.size() + " " + attrs.lastModifiedTime().toMillis();
+        } catch (NoSuchFileException nsfe) {
+            return "- -";
+        }
+    }
+
+    /**
+     * Returns the hex SHA-256 of the file's contents, or "-" if the file
+     * does not exist.
+     */
+    static String hash(Path path) throws IOException {
+        try {
+            return hash(Files.readAllBytes(path));
+        } catch (NoSuchFileException nsfe) {
+            return "-";
+        }
+    }
+
+    static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                  .append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new AssertionError(nsae);
+        }
+    }
+}
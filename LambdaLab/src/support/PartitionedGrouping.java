@@ -0,0 +1,302 @@
+package support;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Grouping collectors for parallel streams with many distinct keys, as
+ * drop-ins for Collectors.groupingBy. For example
+ *
+ *     collect(PartitionedGrouping.groupingBy(String::length, Collectors.counting()))
+ *
+ * Any downstream collector can be used, such as counting(), summingInt()
+ * or toSet().
+ *
+ * Collectors.groupingBy builds a map for every split of a parallel stream,
+ * and then merges the maps pairwise, so each key is re-hashed and combined
+ * once per level of the merge tree. These collectors are CONCURRENT
+ * instead: each thread accumulates into its own tables, with keys spread
+ * over a fixed number of partitions by hash. When the stream is done, each
+ * partition is merged once across all the threads' tables, with the
+ * partitions merged in parallel, and the result is a map over the merged
+ * partitions, without copying them into one table.
+ *
+ * Like groupingByConcurrent, these collectors are UNORDERED: the elements
+ * passed to the downstream collector for a group are not in encounter
+ * order, so a downstream toList() may differ from groupingBy's. Keys must
+ * not be null. The resulting map supports get, put and remove, and
+ * iterates its partitions in turn.
+ */
+public final class PartitionedGrouping {
+    static final int PARTITIONS =
+        Integer.highestOneBit(Math.max(2, 4 * Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    private PartitionedGrouping() { }
+
+    static int partition(int hash, int shift) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Drop-in for Collectors.groupingBy(classifier).
+     */
+    public static <T, K> Collector<T, ?, Map<K, List<T>>>
+            groupingBy(Function<? super T, ? extends K> classifier) {
+        return groupingBy(classifier, Collectors.toList());
+    }
+
+    /**
+     * Drop-in for Collectors.groupingBy(classifier, downstream).
+     */
+    public static <T, K, A, D> Collector<T, ?, Map<K, D>>
+            groupingBy(Function<? super T, ? extends K> classifier,
+                       Collector<? super T, A, D> downstream) {
+        return groupingBy(classifier, downstream, PARTITIONS);
+    }
+
+    /**
+     * As groupingBy(classifier, downstream), with the given number of
+     * partitions, rounded up to a power of two.
+     */
+    public static <T, K, A, D> Collector<T, ?, Map<K, D>>
+            groupingBy(Function<? super T, ? extends K> classifier,
+                       Collector<? super T, A, D> downstream,
+                       int partitions) {
+        int n = Integer.highestOneBit(Math.max(2, partitions) * 2 - 1);
+        int shift = 32 - Integer.numberOfTrailingZeros(n);
+        Supplier<A> supplier = downstream.supplier();
+        BiConsumer<A, ? super T> accumulator = downstream.accumulator();
+        BinaryOperator<A> combiner = downstream.combiner();
+        Function<A, D> finisher =
+            downstream.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH)
+                ? null : downstream.finisher();
+        return Collector.<T, Engine<T, K, A>, Map<K, D>>of(
+            () -> new Engine<>(classifier, supplier, accumulator, n, shift),
+            Engine::accept,
+            Engine::merge,
+            engine -> engine.finish(combiner, finisher),
+            Collector.Characteristics.CONCURRENT,
+            Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * The shared container for one collection: each thread's partitioned
+     * tables, registered as the thread first touches it.
+     */
+    static final class Engine<T, K, A> {
+        final Function<? super T, ? extends K> classifier;
+        final Supplier<A> supplier;
+        final BiConsumer<A, ? super T> accumulator;
+        final int partitions;
+        final int shift;
+        final Queue<List<Map<K, A>>> tables = new ConcurrentLinkedQueue<>();
+        final ThreadLocal<List<Map<K, A>>> local;
+
+        Engine(Function<? super T, ? extends K> classifier, Supplier<A> supplier,
+               BiConsumer<A, ? super T> accumulator, int partitions, int shift) {
+            this.classifier = classifier;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.partitions = partitions;
+            this.shift = shift;
+            this.local = ThreadLocal.withInitial(() -> {
+                List<Map<K, A>> t = new ArrayList<>(Collections.nCopies(partitions, null));
+                tables.add(t);
+                return t;
+            });
+        }
+
+        void accept(T element) {
+            K key = Objects.requireNonNull(classifier.apply(element), "element cannot be mapped to a null key");
+            List<Map<K, A>> t = local.get();
+            int p = partition(key.hashCode(), shift);
+            Map<K, A> m = t.get(p);
+            if (m == null) {
+                m = new HashMap<>();
+                t.set(p, m);
+            }
+            A a = m.get(key);
+            if (a == null) {
+                a = supplier.get();
+                m.put(key, a);
+            }
+            accumulator.accept(a, element);
+        }
+
+        Engine<T, K, A> merge(Engine<T, K, A> other) {
+            tables.addAll(other.tables);
+            return this;
+        }
+
+        /**
+         * Merges each partition across all the threads' tables, applying
+         * the finisher (if any) to each group.
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        <D> Map<K, D> finish(BinaryOperator<A> combiner, Function<A, D> finisher) {
+            List<Map<K, A>[]> all = new ArrayList<>();
+            for (List<Map<K, A>> t : tables) {
+                all.add(t.toArray(new Map[0]));
+            }
+            Map<K, D>[] merged = new Map[partitions];
+            IntStream.range(0, partitions).parallel().forEach(p -> {
+                Map<K, A> into = null;
+                for (Map<K, A>[] t : all) {
+                    Map<K, A> m = t[p];
+                    if (m == null) {
+                        continue;
+                    }
+                    if (into == null) {
+                        into = m;
+                        continue;
+                    }
+                    if (m.size() > into.size()) {
+                        Map<K, A> swap = into;
+                        into = m;
+                        m = swap;
+                    }
+                    for (Map.Entry<K, A> e : m.entrySet()) {
+                        into.merge(e.getKey(), e.getValue(), combiner);
+                    }
+                }
+                if (into == null) {
+                    into = new HashMap<>();
+                }
+                if (finisher != null) {
+                    // finish the groups in place; the map holds D's from here on
+                    ((Map<K, Object>) into).replaceAll((k, v) -> finisher.apply((A) v));
+                }
+                merged[p] = (Map<K, D>) into;
+            });
+            return new PartitionedMap<>(merged, shift);
+        }
+    }
+
+    /**
+     * A map made of disjoint maps, one per partition of the key hashes.
+     */
+    static final class PartitionedMap<K, V> extends AbstractMap<K, V> {
+        final Map<K, V>[] parts;
+        final int shift;
+
+        PartitionedMap(Map<K, V>[] parts, int shift) {
+            this.parts = parts;
+            this.shift = shift;
+        }
+
+        Map<K, V> part(Object key) {
+            return parts[partition(key.hashCode(), shift)];
+        }
+
+        @Override
+        public V get(Object key) {
+            return key == null ? null : part(key).get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key != null && part(key).containsKey(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return part(Objects.requireNonNull(key)).put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return key == null ? null : part(key).remove(key);
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Map<K, V> m : parts) {
+                size += m.size();
+            }
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return PartitionedMap.this.size();
+                }
+
+                // look in the entry's own partition, not through the iterator
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Object key = ((Map.Entry<?, ?>) o).getKey();
+                    return key != null && part(key).entrySet().contains(o);
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Object key = ((Map.Entry<?, ?>) o).getKey();
+                    return key != null && part(key).entrySet().remove(o);
+                }
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new Iterator<Map.Entry<K, V>>() {
+                        int next = 0;
+                        Iterator<Map.Entry<K, V>> current = Collections.emptyIterator();
+                        Iterator<Map.Entry<K, V>> last;
+
+                        @Override
+                        public boolean hasNext() {
+                            while (!current.hasNext() && next < parts.length) {
+                                current = parts[next++].entrySet().iterator();
+                            }
+                            return current.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            last = current;
+                            return current.next();
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last == null) {
+                                throw new IllegalStateException();
+                            }
+                            last.remove();
+                            last = null;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
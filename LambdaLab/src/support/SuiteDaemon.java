@@ -0,0 +1,234 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps a warm JVM around for running the tests, to avoid paying for JVM
+ * startup, class loading and JIT warmup on every run.
+ *
+ * Usage: SuiteDaemon -serve [port]
+ *        SuiteDaemon [-port port] [test ...]
+ *
+ * The first form starts the daemon in the current directory, which should
+ * be the project directory. JUnit and Hamcrest must be on the daemon's
+ * classpath. For each run, the daemon loads the test classes from
+ * build/test/classes, and the classes under test from build/classes, in a
+ * fresh class loader, so that it picks up whatever has been recompiled
+ * since the last run. The loader looks in those directories before asking
+ * its parent, even for classes such as support.* that the daemon itself
+ * was started with: a test and the class it tests must come from the same
+ * loader to share a package, or package-private access fails with an
+ * IllegalAccessError.
+ *
+ * The second form asks a running daemon to run the given tests, and prints
+ * the results. A test is a class name (exercises.A_Lambdas) or a single
+ * method (exercises.A_Lambdas#a1_printAllWords); with no tests, the daemon
+ * runs suite.JUnit4TestSuite. The exit status is 0 if all tests passed.
+ *
+ * The protocol is a line containing the tests to run, separated by spaces,
+ * answered with the output of the run and a final line "#exit status".
+ * Since the client's own JVM startup dominates a warm run, any line-based
+ * client will do as well, for example: echo | nc localhost 7531
+ * JUnit is called reflectively, so this class doesn't need it to compile.
+ */
+public class SuiteDaemon {
+    static final int DEFAULT_PORT = 7531;
+    static final String DEFAULT_SUITE = "suite.JUnit4TestSuite";
+    static final String EXIT = "#exit ";
+
+    final Path classes;
+    final Path testClasses;
+
+    SuiteDaemon(Path classes, Path testClasses) {
+        this.classes = classes;
+        this.testClasses = testClasses;
+    }
+
+    /**
+     * A class loader that loads what it can from its own URLs before
+     * delegating to its parent, so that a class found in the build
+     * directories shadows the copy the daemon was started with.
+     */
+    static class ChildFirstClassLoader extends URLClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        ChildFirstClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try {
+                        c = findClass(name);
+                    } catch (ClassNotFoundException cnfe) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Runs the given tests from classes loaded by the given loader,
+     * printing results to out.
+     *
+     * @return true if all the tests passed
+     */
+    static boolean runTests(ClassLoader loader, List<String> tests, PrintStream out)
+            throws ReflectiveOperationException {
+        Class<?> coreClass = loader.loadClass("org.junit.runner.JUnitCore");
+        Class<?> requestClass = loader.loadClass("org.junit.runner.Request");
+        Class<?> listenerClass = loader.loadClass("org.junit.runner.notification.RunListener");
+        Class<?> resultClass = loader.loadClass("org.junit.runner.Result");
+        Object core = coreClass.getConstructor().newInstance();
+        coreClass.getMethod("addListener", listenerClass)
+                 .invoke(core, loader.loadClass("org.junit.internal.TextListener")
+                                     .getConstructor(PrintStream.class)
+                                     .newInstance(out));
+
+        Method run = coreClass.getMethod("run", requestClass);
+        Method aClass = requestClass.getMethod("aClass", Class.class);
+        Method method = requestClass.getMethod("method", Class.class, String.class);
+        Method wasSuccessful = resultClass.getMethod("wasSuccessful");
+
+        boolean ok = true;
+        for (String test : tests) {
+            int hash = test.indexOf('#');
+            Object request = hash < 0
+                ? aClass.invoke(null, loader.loadClass(test))
+                : method.invoke(null, loader.loadClass(test.substring(0, hash)), test.substring(hash + 1));
+            ok &= (Boolean) wasSuccessful.invoke(run.invoke(core, request));
+        }
+        return ok;
+    }
+
+    /**
+     * Runs the tests in a fresh class loader over testClasses and classes.
+     */
+    boolean run(List<String> tests, PrintStream out) {
+        try (URLClassLoader loader = new ChildFirstClassLoader(
+                 new URL[] { testClasses.toUri().toURL(), classes.toUri().toURL() },
+                 SuiteDaemon.class.getClassLoader())) {
+            return runTests(loader, tests.isEmpty() ? Arrays.asList(DEFAULT_SUITE) : tests, out);
+        } catch (InvocationTargetException ite) {
+            ite.getCause().printStackTrace(out);
+        } catch (ReflectiveOperationException | IOException e) {
+            e.printStackTrace(out);
+        }
+        return false;
+    }
+
+    void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            System.out.println("SuiteDaemon listening on port " + port + ", loading tests from "
+                               + testClasses + " and " + classes);
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    PrintStream out = new PrintStream(socket.getOutputStream(), false, "UTF-8");
+                    String line = in.readLine();
+                    List<String> tests = new ArrayList<>();
+                    if (line != null) {
+                        for (String t : line.trim().split("\\s+")) {
+                            if (!t.isEmpty()) {
+                                tests.add(t);
+                            }
+                        }
+                    }
+                    long start = System.nanoTime();
+                    PrintStream stdout = System.out;
+                    PrintStream stderr = System.err;
+                    boolean ok;
+                    try {
+                        // tests' own output goes to the client too
+                        System.setOut(out);
+                        System.setErr(out);
+                        ok = run(tests, out);
+                    } finally {
+                        System.setOut(stdout);
+                        System.setErr(stderr);
+                    }
+                    System.out.printf("ran %s in %.1f ms: %s%n", tests.isEmpty() ? DEFAULT_SUITE : tests,
+                                      (System.nanoTime() - start) / 1e6, ok ? "passed" : "FAILED");
+                    out.println(EXIT + (ok ? 0 : 1));
+                    out.flush();
+                } catch (IOException ioe) {
+                    System.out.println("client error: " + ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a request to the daemon and copies its output to System.out.
+     *
+     * @return the exit status of the run
+     */
+    static int request(int port, List<String> tests) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write((String.join(" ", tests) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(EXIT)) {
+                    return Integer.parseInt(line.substring(EXIT.length()).trim());
+                }
+                System.out.println(line);
+            }
+            System.out.println("SuiteDaemon closed the connection");
+            return 2;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("-serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            new SuiteDaemon(Paths.get("build", "classes"), Paths.get("build", "test", "classes")).serve(port);
+            return;
+        }
+
+        int port = DEFAULT_PORT;
+        List<String> tests = new ArrayList<>(Arrays.asList(args));
+        if (tests.size() >= 2 && tests.get(0).equals("-port")) {
+            port = Integer.parseInt(tests.get(1));
+            tests = tests.subList(2, tests.size());
+        }
+        try {
+            System.exit(request(port, tests));
+        } catch (ConnectException ce) {
+            System.out.println("no SuiteDaemon on port " + port + "; start one with: SuiteDaemon -serve");
+            System.exit(2);
+        }
+    }
+}
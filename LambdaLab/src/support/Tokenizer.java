@@ -0,0 +1,421 @@
+package support;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits the lines of a Corpus into words, giving the same words as
+ *
+ *     reader.lines().flatMap(line -> SPLIT_PATTERN.splitAsStream(line))
+ *
+ * with SPLIT_PATTERN = Pattern.compile("[- .:,]+"), but working directly on
+ * the mapped bytes. There's no line String, Matcher or word String: each
+ * word is presented through a single reusable CharSequence view, which is
+ * valid until the next call to next(). Words can instead be interned in a
+ * Dictionary as int ids, and only turned into Strings at the end.
+ *
+ * As with splitAsStream, an empty line gives one empty word, a line that
+ * starts with a separator gives an empty first word, and a line with
+ * nothing but separators gives no words. Lines end at \n, \r or \r\n.
+ * Words are decoded as UTF-8; views of ASCII words read the mapped bytes
+ * directly.
+ *
+ * A Tokenizer is not thread-safe, but tokenizers over different ranges of
+ * the same corpus can run concurrently.
+ */
+public final class Tokenizer {
+    public static final String SEPARATORS = "- .:,";
+
+    static final boolean[] SEPARATOR = new boolean[256];
+
+    static {
+        for (char c : SEPARATORS.toCharArray()) {
+            SEPARATOR[c] = true;
+        }
+    }
+
+    final Corpus corpus;
+    final long end;
+    final Token token = new Token();
+    long pos;
+    long line;
+    boolean lineStart = true;
+
+    /**
+     * Creates a tokenizer over the whole corpus.
+     */
+    public Tokenizer(Corpus corpus) {
+        this(corpus, 0, corpus.size());
+    }
+
+    /**
+     * Creates a tokenizer over the bytes [from, to) of the corpus. The range
+     * should start at the beginning of a line.
+     */
+    public Tokenizer(Corpus corpus, long from, long to) {
+        if (from < 0 || to > corpus.size() || from > to) {
+            throw new IndexOutOfBoundsException("range [" + from + ", " + to + "), size " + corpus.size());
+        }
+        this.corpus = corpus;
+        this.pos = from;
+        this.end = to;
+    }
+
+    static boolean isNewline(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    static boolean isSeparator(byte b) {
+        return SEPARATOR[b & 0xff];
+    }
+
+    /** Advances past the line terminator at pos, if there is one. */
+    void endLine() {
+        if (pos < end) {
+            if (corpus.byteAt(pos++) == '\r' && pos < end && corpus.byteAt(pos) == '\n') {
+                pos++;
+            }
+        }
+        line++;
+        lineStart = true;
+    }
+
+    /**
+     * Advances to the next word.
+     *
+     * @return false if there are no more words
+     */
+    public boolean next() {
+        while (pos < end) {
+            byte b = corpus.byteAt(pos);
+            if (lineStart) {
+                lineStart = false;
+                if (isNewline(b)) {
+                    // empty line
+                    token.set(pos, 0, true);
+                    endLine();
+                    return true;
+                }
+                if (isSeparator(b)) {
+                    long start = pos;
+                    while (pos < end && isSeparator(corpus.byteAt(pos))) {
+                        pos++;
+                    }
+                    if (pos == end || isNewline(corpus.byteAt(pos))) {
+                        // nothing but separators
+                        endLine();
+                        continue;
+                    }
+                    token.set(start, 0, true);
+                    return true;
+                }
+            }
+
+            while (pos < end && isSeparator(b = corpus.byteAt(pos))) {
+                pos++;
+            }
+            if (pos == end) {
+                break;
+            }
+            if (isNewline(b)) {
+                endLine();
+                continue;
+            }
+
+            long start = pos;
+            boolean ascii = true;
+            while (pos < end && !isSeparator(b = corpus.byteAt(pos)) && !isNewline(b)) {
+                ascii &= b >= 0;
+                pos++;
+            }
+            token.set(start, (int) (pos - start), ascii);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the current word. The view is reused, and changes on the
+     * next call to next(); use toString() to keep a copy.
+     */
+    public CharSequence token() {
+        return token;
+    }
+
+    /**
+     * Returns the line number of the current word, counting from 0 at the
+     * start of the tokenizer's range.
+     */
+    public long line() {
+        return token.line;
+    }
+
+    /**
+     * Passes a view of each remaining word to the action. The view is only
+     * valid during the call.
+     */
+    public void forEach(Consumer<? super CharSequence> action) {
+        while (next()) {
+            action.accept(token);
+        }
+    }
+
+    /**
+     * Interns each remaining word in the dictionary, and passes its id to
+     * the action.
+     */
+    public void forEachId(Dictionary dictionary, IntConsumer action) {
+        while (next()) {
+            action.accept(dictionary.intern(token));
+        }
+    }
+
+    /**
+     * Returns the remaining words as a stream of Strings. This allocates
+     * a String for each word.
+     */
+    public Stream<String> strings() {
+        Iterator<String> it = new Iterator<String>() {
+            boolean ready;
+
+            @Override
+            public boolean hasNext() {
+                if (!ready) {
+                    ready = Tokenizer.this.next();
+                }
+                return ready;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                return token.toString();
+            }
+        };
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * A view of one word. An ASCII word is read straight from the mapped
+     * bytes; anything else is decoded into a reused buffer on first access.
+     */
+    final class Token implements CharSequence {
+        long start;
+        int byteLength;
+        boolean ascii;
+        long line;
+
+        // decoded chars of a non-ASCII word; charLength is -1 until decoded
+        byte[] bytes = new byte[64];
+        char[] chars = new char[64];
+        int charLength;
+        CharsetDecoder decoder;
+
+        void set(long start, int byteLength, boolean ascii) {
+            this.start = start;
+            this.byteLength = byteLength;
+            this.ascii = ascii;
+            this.charLength = ascii ? byteLength : -1;
+            this.line = Tokenizer.this.line;
+        }
+
+        byte byteAt(int i) {
+            return corpus.byteAt(start + i);
+        }
+
+        void decode() {
+            if (charLength >= 0) {
+                return;
+            }
+            if (bytes.length < byteLength) {
+                bytes = new byte[Math.max(byteLength, bytes.length * 2)];
+                chars = new char[bytes.length];
+            }
+            for (int i = 0; i < byteLength; i++) {
+                bytes[i] = byteAt(i);
+            }
+            if (decoder == null) {
+                decoder = StandardCharsets.UTF_8.newDecoder()
+                                                .onMalformedInput(CodingErrorAction.REPLACE)
+                                                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            CharBuffer out = CharBuffer.wrap(chars);
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(bytes, 0, byteLength), out, true);
+            decoder.flush(out);
+            charLength = out.position();
+        }
+
+        @Override
+        public int length() {
+            decode();
+            return charLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            decode();
+            if (index < 0 || index >= charLength) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + charLength);
+            }
+            return ascii ? (char) byteAt(index) : chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            decode();
+            if (ascii) {
+                byte[] b = new byte[byteLength];
+                for (int i = 0; i < byteLength; i++) {
+                    b[i] = byteAt(i);
+                }
+                return new String(b, StandardCharsets.US_ASCII);
+            }
+            return new String(chars, 0, charLength);
+        }
+    }
+
+    /**
+     * Interns words as consecutive int ids, starting at 0. The UTF-8 bytes
+     * of each distinct word are stored once, in a single array; looking up
+     * a word that's already there allocates nothing.
+     */
+    public static final class Dictionary {
+        byte[] arena = new byte[1 << 12];
+        int arenaSize;
+        int[] offsets = new int[1 << 8];    // offsets[id] .. offsets[id + 1]
+        int[] hashes = new int[1 << 8];
+        int size;
+        int[] table = new int[1 << 9];      // id + 1, or 0 if empty
+
+        static int mix(int h) {
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Returns the id of the word, adding it if it's new.
+         */
+        public int intern(CharSequence word) {
+            if (word instanceof Tokenizer.Token) {
+                Tokenizer.Token t = (Tokenizer.Token) word;
+                int h = 0;
+                for (int i = 0; i < t.byteLength; i++) {
+                    h = 31 * h + t.byteAt(i);
+                }
+                int mask = table.length - 1;
+                for (int slot = mix(h) & mask; ; slot = (slot + 1) & mask) {
+                    int id = table[slot] - 1;
+                    if (id < 0) {
+                        byte[] b = new byte[t.byteLength];
+                        for (int i = 0; i < b.length; i++) {
+                            b[i] = t.byteAt(i);
+                        }
+                        return add(b, h, slot);
+                    }
+                    if (hashes[id] == h && equals(id, t)) {
+                        return id;
+                    }
+                }
+            }
+            return intern(word.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        int intern(byte[] b) {
+            int h = 0;
+            for (byte x : b) {
+                h = 31 * h + x;
+            }
+            int mask = table.length - 1;
+            for (int slot = mix(h) & mask; ; slot = (slot + 1) & mask) {
+                int id = table[slot] - 1;
+                if (id < 0) {
+                    return add(b, h, slot);
+                }
+                if (hashes[id] == h
+                        && Arrays.equals(arena, offsets[id], offsets[id + 1], b, 0, b.length)) {
+                    return id;
+                }
+            }
+        }
+
+        boolean equals(int id, Tokenizer.Token t) {
+            int off = offsets[id];
+            if (offsets[id + 1] - off != t.byteLength) {
+                return false;
+            }
+            for (int i = 0; i < t.byteLength; i++) {
+                if (arena[off + i] != t.byteAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int add(byte[] b, int h, int slot) {
+            int id = size++;
+            if (id + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            if (arenaSize + b.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + b.length));
+            }
+            System.arraycopy(b, 0, arena, arenaSize, b.length);
+            offsets[id] = arenaSize;
+            arenaSize += b.length;
+            offsets[id + 1] = arenaSize;
+            hashes[id] = h;
+            table[slot] = id + 1;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = mix(hashes[id]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id + 1;
+            }
+        }
+
+        /** Returns the number of distinct words. */
+        public int size() {
+            return size;
+        }
+
+        /** Returns the word with the given id, as a new String. */
+        public String word(int id) {
+            if (id < 0 || id >= size) {
+                throw new IndexOutOfBoundsException("id " + id + ", size " + size);
+            }
+            return new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package support;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Collectors for the K most frequent words, without sorting the whole
+ * frequency map. The result is a list of (word, count) entries, highest
+ * count first, with ties in word order.
+ *
+ * exact(k) counts every word with a WordCounts, then keeps the top K in a
+ * min-heap of size K. The counts are exact, but memory grows with the
+ * vocabulary.
+ *
+ * spaceSaving(k, capacity) uses the Space-Saving algorithm (Metwally,
+ * Agrawal and El Abbadi), which keeps at most capacity counters however
+ * many distinct words there are. When a new word arrives and the counters
+ * are full, it takes over the counter with the smallest count, inheriting
+ * that count as its error. Each reported count is then an overestimate by
+ * at most its error, and every word occurring more than n / capacity times
+ * in n words is guaranteed to have a counter. Summaries of parallel splits
+ * are merged as in Agarwal et al., "Mergeable Summaries": a word missing
+ * from a full summary is taken to have that summary's minimum count.
+ */
+public final class TopK {
+    private TopK() { }
+
+    /** Highest count first, then word order. */
+    static final Comparator<Map.Entry<String, Long>> ORDER =
+        Comparator.<Map.Entry<String, Long>>comparingLong(Map.Entry::getValue)
+                  .reversed()
+                  .thenComparing(Map.Entry::getKey);
+
+    static Map.Entry<String, Long> entry(String word, long count) {
+        return new AbstractMap.SimpleImmutableEntry<>(word, count);
+    }
+
+    /**
+     * Returns the top k words of the counts.
+     */
+    public static List<Map.Entry<String, Long>> top(WordCounts counts, int k) {
+        // min-heap on ORDER, so the root is the first to go
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(k + 1, ORDER.reversed());
+        counts.forEach((word, count) -> {
+            if (heap.size() < k) {
+                heap.add(entry(word, count));
+            } else if (k > 0) {
+                Map.Entry<String, Long> min = heap.peek();
+                if (count > min.getValue() || (count == min.getValue() && word.compareTo(min.getKey()) < 0)) {
+                    heap.poll();
+                    heap.add(entry(word, count));
+                }
+            }
+        });
+        List<Map.Entry<String, Long>> list = new ArrayList<>(heap);
+        list.sort(ORDER);
+        return list;
+    }
+
+    /**
+     * Returns a Collector for the exact top k words.
+     */
+    public static Collector<CharSequence, ?, List<Map.Entry<String, Long>>> exact(int k) {
+        return Collector.of(WordCounts::new, WordCounts::add, WordCounts::addAll,
+                            counts -> top(counts, k),
+                            Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Returns a Collector for the approximate top k words, using at most
+     * capacity counters per split.
+     */
+    public static Collector<CharSequence, ?, List<Map.Entry<String, Long>>> spaceSaving(int k, int capacity) {
+        if (capacity < k) {
+            throw new IllegalArgumentException("capacity " + capacity + " is less than k " + k);
+        }
+        return Collector.of(() -> new SpaceSaving(capacity), SpaceSaving::add, SpaceSaving::merge,
+                            s -> s.top(k),
+                            Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * A Space-Saving summary: at most capacity counters, in a min-heap on
+     * count, indexed by word.
+     */
+    public static final class SpaceSaving {
+        static final class Counter {
+            String word;
+            long count;
+            long error;
+            int index;
+        }
+
+        final int capacity;
+        final Counter[] heap;
+        final Map<String, Counter> counters = new HashMap<>();
+        int size;
+        long total;
+
+        public SpaceSaving(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity " + capacity);
+            }
+            this.capacity = capacity;
+            this.heap = new Counter[capacity];
+        }
+
+        /** Adds one occurrence of the word. */
+        public void add(CharSequence word) {
+            total++;
+            String w = word.toString();
+            Counter c = counters.get(w);
+            if (c != null) {
+                c.count++;
+                siftDown(c.index);
+                return;
+            }
+            if (size < capacity) {
+                c = new Counter();
+                c.word = w;
+                c.count = 1;
+                c.index = size;
+                heap[size++] = c;
+                counters.put(w, c);
+                siftUp(c.index);
+            } else {
+                // the new word takes over the smallest counter
+                c = heap[0];
+                counters.remove(c.word);
+                c.word = w;
+                c.error = c.count;
+                c.count++;
+                counters.put(w, c);
+                siftDown(0);
+            }
+        }
+
+        long minCount() {
+            return size < capacity ? 0 : heap[0].count;
+        }
+
+        /**
+         * Merges the other summary into this one.
+         */
+        public SpaceSaving merge(SpaceSaving other) {
+            long min1 = minCount();
+            long min2 = other.minCount();
+            List<Counter> all = new ArrayList<>(size + other.size);
+            for (int i = 0; i < size; i++) {
+                Counter c = heap[i];
+                Counter o = other.counters.get(c.word);
+                c.count += o == null ? min2 : o.count;
+                c.error += o == null ? min2 : o.error;
+                all.add(c);
+            }
+            for (int i = 0; i < other.size; i++) {
+                Counter o = other.heap[i];
+                if (!counters.containsKey(o.word)) {
+                    Counter c = new Counter();
+                    c.word = o.word;
+                    c.count = o.count + min1;
+                    c.error = o.error + min1;
+                    all.add(c);
+                }
+            }
+            // keep the largest counts
+            all.sort(Comparator.comparingLong((Counter c) -> c.count).reversed());
+            counters.clear();
+            size = Math.min(capacity, all.size());
+            for (int i = 0; i < size; i++) {
+                Counter c = all.get(i);
+                c.index = i;
+                heap[i] = c;
+                counters.put(c.word, c);
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+            total += other.total;
+            return this;
+        }
+
+        void siftUp(int i) {
+            Counter c = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent].count <= c.count) {
+                    break;
+                }
+                place(heap[parent], i);
+                i = parent;
+            }
+            place(c, i);
+        }
+
+        void siftDown(int i) {
+            Counter c = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                    child++;
+                }
+                if (c.count <= heap[child].count) {
+                    break;
+                }
+                place(heap[child], i);
+                i = child;
+            }
+            place(c, i);
+        }
+
+        void place(Counter c, int i) {
+            heap[i] = c;
+            c.index = i;
+        }
+
+        /** Returns the number of words added. */
+        public long total() {
+            return total;
+        }
+
+        /**
+         * Returns the estimated count of the word: an overestimate by at
+         * most error(word), or 0 if the word has no counter.
+         */
+        public long estimate(String word) {
+            Counter c = counters.get(word);
+            return c == null ? 0 : c.count;
+        }
+
+        /** Returns the maximum overestimate of the word's count. */
+        public long error(String word) {
+            Counter c = counters.get(word);
+            return c == null ? minCount() : c.error;
+        }
+
+        /**
+         * Returns true if the word is certainly among the top k: its count
+         * less its error strictly exceeds the estimated count of the (k+1)th
+         * word. On a tie the word might share its place, so it isn't.
+         */
+        public boolean isGuaranteed(String word, int k) {
+            Counter c = counters.get(word);
+            if (c == null) {
+                return false;
+            }
+            List<Map.Entry<String, Long>> top = top(k + 1);
+            long next = top.size() > k ? top.get(k).getValue() : minCount();
+            return c.count - c.error > next;
+        }
+
+        /** Returns the k words with the highest estimated counts. */
+        public List<Map.Entry<String, Long>> top(int k) {
+            List<Map.Entry<String, Long>> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(entry(heap[i].word, heap[i].count));
+            }
+            list.sort(ORDER);
+            return Collections.unmodifiableList(new ArrayList<>(list.subList(0, Math.min(k, list.size()))));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package support;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Single-pass line transformer that applies the same rules as Grind.subst
+ * followed by Grind.Sink. Each line is scanned exactly once by a DFA built
+ * from the Aho-Corasick automaton for all of the markers; a line that
+ * contains no marker is returned as-is without allocating anything.
+ *
+ * Markers are matched leftmost, non-overlapping, on the original line. This
+ * differs from the chained replacements in subst only for contrived lines
+ * in which removing one marker would splice another one together.
+ *
+ * An instance carries the BEGINREMOVE/ENDREMOVE state from line to line,
+ * so use one instance per file. Not thread-safe.
+ */
+class Transformer {
+    static final int PACKAGE = 0;
+    static final int TEST = 1;
+    static final int UNCOMMENT = 2;
+    static final int TODO = 3;
+    static final int BEGINREMOVE = 4;
+    static final int ENDREMOVE = 5;
+    static final int SUBPACKAGE = 6;
+    static final int IMPORT = 7;
+    static final int STATIC_IMPORT = 8;
+
+    static final String[] MARKERS = {
+        "package solutions;",
+        "@Test",
+        "//UNCOMMENT//",
+        "//TODO//",
+        "//BEGINREMOVE",
+        "//ENDREMOVE",
+        "package solutions.",
+        "import solutions.",
+        "import static solutions."
+    };
+
+    static final String[] REPLACEMENTS = {
+        "package exercises;",
+        "@Test @Ignore",
+        "",
+        "",
+        null,
+        null,
+        "package exercises.",
+        "import exercises.",
+        "import static exercises."
+    };
+
+    static final String TODO_SUFFIX = " // TODO";
+
+    /** Transitions for ASCII input, indexed by (state << 7) | ch. */
+    static final int[] DELTA;
+
+    /** Marker recognized on entering each state, or -1 if none. */
+    static final int[] MATCH;
+
+    static {
+        int maxStates = 1 + Arrays.stream(MARKERS).mapToInt(String::length).sum();
+        int[][] next = new int[maxStates][128];
+        int[] match = new int[maxStates];
+        int[] fail = new int[maxStates];
+        Arrays.fill(match, -1);
+        for (int[] row : next) {
+            Arrays.fill(row, -1);
+        }
+
+        // build the trie
+        int states = 1;
+        for (int m = 0; m < MARKERS.length; m++) {
+            int s = 0;
+            for (char c : MARKERS[m].toCharArray()) {
+                if (next[s][c] < 0) {
+                    next[s][c] = states++;
+                }
+                s = next[s][c];
+            }
+            match[s] = m;
+        }
+
+        // breadth-first, fill in failure transitions to complete the DFA
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < 128; c++) {
+            if (next[0][c] < 0) {
+                next[0][c] = 0;
+            } else {
+                queue.add(next[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.remove();
+            if (match[s] < 0) {
+                match[s] = match[fail[s]];
+            }
+            for (int c = 0; c < 128; c++) {
+                int t = next[s][c];
+                if (t < 0) {
+                    next[s][c] = next[fail[s]][c];
+                } else {
+                    fail[t] = next[fail[s]][c];
+                    queue.add(t);
+                }
+            }
+        }
+
+        DELTA = new int[states << 7];
+        for (int s = 0; s < states; s++) {
+            System.arraycopy(next[s], 0, DELTA, s << 7, 128);
+        }
+        MATCH = Arrays.copyOf(match, states);
+    }
+
+    /**
+     * Advances the automaton by one character. Non-ASCII characters can't
+     * be part of any marker, so they reset it to the start state.
+     */
+    static int step(int state, int ch) {
+        return ch < 128 ? DELTA[(state << 7) | ch] : 0;
+    }
+
+    boolean removing = false;
+
+    // Counters for GrindStats.
+    long linesKept;
+    long linesRemoved;
+    long markers;
+
+    // Matches found on the current line, reused from line to line.
+    int[] matchIds = new int[8];
+    int[] matchEnds = new int[8];
+    int matchCount;
+
+    /**
+     * Finds all markers in the line, recording them in matchIds/matchEnds.
+     * After a match the automaton restarts, so matches don't overlap. (No
+     * marker contains another, so the first match to end is also the
+     * leftmost.)
+     */
+    void scan(String line, int from) {
+        matchCount = 0;
+        int state = 0;
+        for (int i = from; i < line.length(); i++) {
+            state = step(state, line.charAt(i));
+            int m = MATCH[state];
+            if (m >= 0) {
+                if (matchCount == matchIds.length) {
+                    matchIds = Arrays.copyOf(matchIds, matchCount * 2);
+                    matchEnds = Arrays.copyOf(matchEnds, matchCount * 2);
+                }
+                matchIds[matchCount] = m;
+                matchEnds[matchCount] = i + 1;
+                matchCount++;
+                state = 0;
+            }
+        }
+    }
+
+    /**
+     * Transforms one line.
+     *
+     * @return the transformed line, or null if the line is to be dropped
+     */
+    String apply(String line) {
+        int state = 0;
+        int first = 0;
+        int n = line.length();
+        while (first < n && MATCH[state = step(state, line.charAt(first))] < 0) {
+            first++;
+        }
+        if (first == n) {
+            if (removing) {
+                linesRemoved++;
+                return null;
+            }
+            linesKept++;
+            return line;
+        }
+
+        scan(line, first + 1 - MARKERS[MATCH[state]].length());
+        markers += matchCount;
+        int lastTodo = -1;
+        boolean end = false;
+        for (int k = 0; k < matchCount; k++) {
+            switch (matchIds[k]) {
+                case BEGINREMOVE:
+                    removing = true;
+                    linesRemoved++;
+                    return null;
+                case ENDREMOVE:
+                    end = true;
+                    break;
+                case TODO:
+                    lastTodo = k;
+                    break;
+            }
+        }
+        if (end) {
+            removing = false;
+            linesRemoved++;
+            return null;
+        }
+        if (removing) {
+            linesRemoved++;
+            return null;
+        }
+
+        linesKept++;
+        StringBuilder sb = new StringBuilder(n + 16);
+        int pos = 0;
+        for (int k = 0; k < matchCount; k++) {
+            int m = matchIds[k];
+            int start = matchEnds[k] - MARKERS[m].length();
+            sb.append(line, pos, start)
+              .append(m == TODO && k != lastTodo ? MARKERS[m] : REPLACEMENTS[m]);
+            pos = matchEnds[k];
+        }
+        sb.append(line, pos, n);
+        if (lastTodo >= 0) {
+            sb.append(TODO_SUFFIX);
+        }
+        return sb.toString();
+    }
+}
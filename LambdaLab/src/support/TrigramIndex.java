@@ -0,0 +1,705 @@
+package support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A trigram index over the lines of a text, for finding regex matches
+ * without running the regex engine over all of it. For example
+ *
+ *     new TrigramIndex(SONNET).results(Pattern.compile("[aeiou]{3}", Pattern.CASE_INSENSITIVE))
+ *
+ * gives the same matches as Matcher.results() over the whole text.
+ *
+ * The index maps every trigram (three consecutive chars, lower-cased) to
+ * the lines containing it. A pattern is analyzed for the trigrams any
+ * match must contain: runs of literal chars and small character classes
+ * (up to CLASS_CAP chars, such as [aeiou]) give, at each position, a set
+ * of possible trigrams (up to TRIGRAM_CAP), at least one of which must
+ * occur. Only lines meeting every such constraint (of at least one branch
+ * of a top-level alternation) are matched, each as a region of the whole
+ * text with transparent, non-anchoring bounds, so that \b, ^, $ and
+ * lookarounds behave as they do over the whole text.
+ *
+ * This is only sound for matches that lie within a line, so a pattern that
+ * might match a line terminator (\s, a negated class, . with DOTALL or
+ * UNIX_LINES, and so on), or from which no trigrams can be extracted (such
+ * as WORD_PAT, whose literal run is only one char long), is run over the
+ * whole text instead. So are patterns using \G, which would match at the
+ * start of every candidate line, patterns using COMMENTS, CANON_EQ or
+ * UNICODE_CASE, and syntax the analysis doesn't understand.
+ */
+public final class TrigramIndex {
+    static final int CLASS_CAP = 10;
+    static final int TRIGRAM_CAP = 256;
+
+    final CharSequence text;
+    final int[] lineStarts;
+    final int[] lineEnds;
+    int lineCount;
+
+    // open-addressing map from trigram to posting list of lines
+    long[] keys = new long[1 << 12];
+    int[][] lists = new int[1 << 12][];
+    int[] listSizes = new int[1 << 12];
+    int size;
+
+    /**
+     * Indexes the text.
+     */
+    public TrigramIndex(CharSequence text) {
+        this.text = text;
+        int n = text.length();
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        int i = 0;
+        while (i < n) {
+            if (lineCount == starts.length) {
+                starts = Arrays.copyOf(starts, lineCount * 2);
+                ends = Arrays.copyOf(ends, lineCount * 2);
+            }
+            int start = i;
+            char c = 0;
+            while (i < n && (c = text.charAt(i)) != '\n' && c != '\r') {
+                i++;
+            }
+            starts[lineCount] = start;
+            ends[lineCount] = i;
+            indexLine(start, i, lineCount);
+            lineCount++;
+            if (i < n) {
+                i++;
+                if (c == '\r' && i < n && text.charAt(i) == '\n') {
+                    i++;
+                }
+            }
+        }
+        lineStarts = starts;
+        lineEnds = ends;
+    }
+
+    /** Returns the index over the text of the corpus. */
+    public static TrigramIndex of(Corpus corpus) {
+        return new TrigramIndex(corpus.chars());
+    }
+
+    static long trigram(char a, char b, char c) {
+        return (long) a << 32 | (long) b << 16 | c;
+    }
+
+    static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+
+    void indexLine(int start, int end, int line) {
+        if (end - start < 3) {
+            return;
+        }
+        char a = Character.toLowerCase(text.charAt(start));
+        char b = Character.toLowerCase(text.charAt(start + 1));
+        for (int i = start + 2; i < end; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            add(trigram(a, b, c), line);
+            a = b;
+            b = c;
+        }
+    }
+
+    void add(long key, int line) {
+        int mask = keys.length - 1;
+        int s = slot(key, mask);
+        while (lists[s] != null && keys[s] != key) {
+            s = (s + 1) & mask;
+        }
+        if (lists[s] == null) {
+            keys[s] = key;
+            lists[s] = new int[2];
+            if (++size * 2 > keys.length) {
+                grow();
+                add(key, line);
+                return;
+            }
+        }
+        int[] list = lists[s];
+        int k = listSizes[s];
+        if (k > 0 && list[k - 1] == line) {
+            return;
+        }
+        if (k == list.length) {
+            lists[s] = list = Arrays.copyOf(list, k * 2);
+        }
+        list[k] = line;
+        listSizes[s] = k + 1;
+    }
+
+    void grow() {
+        long[] oldKeys = keys;
+        int[][] oldLists = lists;
+        int[] oldSizes = listSizes;
+        keys = new long[oldKeys.length * 2];
+        lists = new int[keys.length][];
+        listSizes = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldLists[i] != null) {
+                int s = slot(oldKeys[i], mask);
+                while (lists[s] != null) {
+                    s = (s + 1) & mask;
+                }
+                keys[s] = oldKeys[i];
+                lists[s] = oldLists[i];
+                listSizes[s] = oldSizes[i];
+            }
+        }
+    }
+
+    /** Returns the lines containing the trigram, in order. */
+    int[] lines(long key) {
+        int mask = keys.length - 1;
+        for (int s = slot(key, mask); lists[s] != null; s = (s + 1) & mask) {
+            if (keys[s] == key) {
+                return Arrays.copyOf(lists[s], listSizes[s]);
+            }
+        }
+        return new int[0];
+    }
+
+    /** Returns the number of lines in the text. */
+    public int lineCount() {
+        return lineCount;
+    }
+
+    // ---------- queries ----------
+
+    /** Returns the lines containing any of the trigrams, in order. */
+    int[] anyOf(long[] clause) {
+        int[] all = new int[0];
+        int n = 0;
+        for (long key : clause) {
+            int[] lines = lines(key);
+            if (n + lines.length > all.length) {
+                all = Arrays.copyOf(all, Math.max(n + lines.length, all.length * 2));
+            }
+            System.arraycopy(lines, 0, all, n, lines.length);
+            n += lines.length;
+        }
+        return sortedDistinct(all, n);
+    }
+
+    /** Returns the first n lines, sorted and without duplicates. */
+    static int[] sortedDistinct(int[] lines, int n) {
+        Arrays.sort(lines, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || lines[i] != lines[distinct - 1]) {
+                lines[distinct++] = lines[i];
+            }
+        }
+        return Arrays.copyOf(lines, distinct);
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Returns the lines that might contain a match of the pattern, in
+     * order, or null if the whole text must be scanned.
+     */
+    public int[] candidates(Pattern pattern) {
+        List<List<long[]>> branches = Extractor.extract(pattern);
+        if (branches == null) {
+            return null;
+        }
+        int[][] candidates = new int[branches.size()][];
+        int total = 0;
+        for (int b = 0; b < candidates.length; b++) {
+            List<int[]> clauses = new ArrayList<>();
+            for (long[] clause : branches.get(b)) {
+                clauses.add(anyOf(clause));
+            }
+            // intersect the most selective first
+            clauses.sort(Comparator.comparingInt(lines -> lines.length));
+            int[] lines = clauses.get(0);
+            for (int k = 1; k < clauses.size() && lines.length > 0; k++) {
+                lines = intersect(lines, clauses.get(k));
+            }
+            candidates[b] = lines;
+            total += lines.length;
+        }
+        if (candidates.length == 1) {
+            return candidates[0];
+        }
+        int[] union = new int[total];
+        int n = 0;
+        for (int[] lines : candidates) {
+            System.arraycopy(lines, 0, union, n, lines.length);
+            n += lines.length;
+        }
+        return sortedDistinct(union, n);
+    }
+
+    /**
+     * Returns the matches of the pattern in the text, the same as
+     * pattern.matcher(text).results(), scanning only the candidate lines
+     * when possible.
+     */
+    public List<MatchResult> results(Pattern pattern) {
+        Matcher m = pattern.matcher(text);
+        int[] lines = candidates(pattern);
+        if (lines == null) {
+            return m.results().collect(Collectors.toList());
+        }
+        List<MatchResult> results = new ArrayList<>();
+        m.useTransparentBounds(true).useAnchoringBounds(false);
+        for (int line : lines) {
+            m.region(lineStarts[line], lineEnds[line]);
+            while (m.find()) {
+                results.add(m.toMatchResult());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Extracts trigram constraints from a pattern. The result is a list of
+     * branches, any of which may match; each branch is a list of clauses,
+     * all of which must hold; each clause is a set of trigrams, at least
+     * one of which must occur. A null result means there's no usable
+     * constraint, or that matches might span lines.
+     */
+    static final class Extractor {
+        /** An atom that matches too many chars to be useful. */
+        static final char[] ANY = new char[0];
+        /** An atom that consumes nothing, and ends a run. */
+        static final char[] ZERO = new char[0];
+        /** An atom that consumes nothing, and doesn't end a run. */
+        static final char[] NONE = new char[0];
+
+        final String re;
+        int i;
+        boolean dotall;
+        boolean unixLines;
+        boolean lineSafe = true;
+
+        Extractor(String re, int flags) {
+            this.re = re;
+            this.dotall = (flags & Pattern.DOTALL) != 0;
+            this.unixLines = (flags & Pattern.UNIX_LINES) != 0;
+        }
+
+        static List<List<long[]>> extract(Pattern pattern) {
+            int flags = pattern.flags();
+            if ((flags & (Pattern.COMMENTS | Pattern.CANON_EQ | Pattern.UNICODE_CASE)) != 0) {
+                return null;
+            }
+            List<List<List<char[]>>> branches;
+            Extractor x = new Extractor(pattern.pattern(), flags);
+            try {
+                if ((flags & Pattern.LITERAL) != 0) {
+                    List<char[]> run = new ArrayList<>();
+                    for (char c : x.re.toCharArray()) {
+                        run.add(x.literal(c));
+                    }
+                    List<List<char[]>> runs = new ArrayList<>();
+                    runs.add(run);
+                    branches = new ArrayList<>();
+                    branches.add(runs);
+                } else {
+                    branches = x.alternation();
+                    if (x.i != x.re.length()) {
+                        return null;
+                    }
+                }
+            } catch (RuntimeException unsupported) {
+                return null;
+            }
+            if (!x.lineSafe) {
+                return null;
+            }
+
+            List<List<long[]>> result = new ArrayList<>();
+            for (List<List<char[]>> runs : branches) {
+                List<long[]> clauses = new ArrayList<>();
+                for (List<char[]> run : runs) {
+                    for (int k = 0; k + 2 < run.size(); k++) {
+                        char[] a = run.get(k);
+                        char[] b = run.get(k + 1);
+                        char[] c = run.get(k + 2);
+                        if (a.length * b.length * c.length > TRIGRAM_CAP) {
+                            continue;
+                        }
+                        long[] clause = new long[a.length * b.length * c.length];
+                        int n = 0;
+                        for (char ca : a) {
+                            for (char cb : b) {
+                                for (char cc : c) {
+                                    clause[n++] = trigram(ca, cb, cc);
+                                }
+                            }
+                        }
+                        clauses.add(clause);
+                    }
+                }
+                if (clauses.isEmpty()) {
+                    return null;
+                }
+                result.add(clauses);
+            }
+            return result;
+        }
+
+        boolean more() {
+            return i < re.length();
+        }
+
+        char peek() {
+            return re.charAt(i);
+        }
+
+        char[] literal(char c) {
+            if (c == '\n' || c == '\r') {
+                lineSafe = false;
+            }
+            if (Character.isSurrogate(c)) {
+                return ANY;
+            }
+            return new char[] { Character.toLowerCase(c) };
+        }
+
+        /** Parses branches separated by |, up to ) or the end. */
+        List<List<List<char[]>>> alternation() {
+            List<List<List<char[]>>> branches = new ArrayList<>();
+            branches.add(sequence());
+            while (more() && peek() == '|') {
+                i++;
+                branches.add(sequence());
+            }
+            return branches;
+        }
+
+        /** Parses a sequence of quantified atoms into runs of char sets. */
+        List<List<char[]>> sequence() {
+            List<List<char[]>> runs = new ArrayList<>();
+            List<char[]> run = new ArrayList<>();
+            while (more() && peek() != '|' && peek() != ')') {
+                if (re.startsWith("\\Q", i)) {
+                    int end = re.indexOf("\\E", i + 2);
+                    String quoted = re.substring(i + 2, end < 0 ? re.length() : end);
+                    i = end < 0 ? re.length() : end + 2;
+                    if (quoted.isEmpty()) {
+                        continue;
+                    }
+                    for (int k = 0; k < quoted.length() - 1; k++) {
+                        run.add(literal(quoted.charAt(k)));
+                    }
+                    run = quantify(literal(quoted.charAt(quoted.length() - 1)), run, runs);
+                    continue;
+                }
+                run = quantify(atom(), run, runs);
+            }
+            runs.add(run);
+            return runs;
+        }
+
+        /**
+         * Parses any quantifier after the atom, and adds the atom to the
+         * run. Returns the run to continue with.
+         */
+        List<char[]> quantify(char[] atom, List<char[]> run, List<List<char[]>> runs) {
+            int min = 1;
+            int max = 1;
+            if (more()) {
+                char c = peek();
+                if (c == '*' || c == '+' || c == '?') {
+                    i++;
+                    min = c == '+' ? 1 : 0;
+                    max = c == '?' ? 1 : -1;
+                } else if (c == '{') {
+                    int close = re.indexOf('}', i);
+                    String[] bounds = re.substring(i + 1, close).split(",", -1);
+                    min = Integer.parseInt(bounds[0].trim());
+                    max = bounds.length == 1 ? min
+                        : bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim());
+                    i = close + 1;
+                }
+                if (min != 1 || max != 1) {
+                    // lazy or possessive
+                    if (more() && (peek() == '?' || peek() == '+')) {
+                        i++;
+                    }
+                }
+            }
+
+            if (atom == NONE) {
+                return run;
+            }
+            if (atom == ANY || atom == ZERO || min == 0) {
+                runs.add(run);
+                return new ArrayList<>();
+            }
+            // more than three copies of the same set add no new trigrams
+            for (int k = 0; k < Math.min(min, 3); k++) {
+                run.add(atom);
+            }
+            if (max != min) {
+                runs.add(run);
+                return new ArrayList<>();
+            }
+            return run;
+        }
+
+        /** Parses one atom. */
+        char[] atom() {
+            char c = re.charAt(i++);
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    return charClass();
+                case '.':
+                    // with UNIX_LINES, . matches \r, which ends an indexed line
+                    if (dotall || unixLines) {
+                        lineSafe = false;
+                    }
+                    return ANY;
+                case '^':
+                case '$':
+                    return ZERO;
+                case '\\':
+                    return escape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new IllegalArgumentException("dangling quantifier");
+                default:
+                    return literal(c);
+            }
+        }
+
+        /** Parses a group, after the (. Its contents end any run. */
+        char[] group() {
+            if (more() && peek() == '?') {
+                i++;
+                char c = re.charAt(i);
+                if (c == '<' && re.charAt(i + 1) != '=' && re.charAt(i + 1) != '!') {
+                    i = re.indexOf('>', i) + 1;     // named group
+                } else if (c == ':' || c == '=' || c == '!' || c == '>') {
+                    i++;
+                } else if (c == '<') {
+                    i += 2;                         // lookbehind
+                } else {
+                    // inline flags, alone as (?flags) or as (?flags:...)
+                    boolean on = true;
+                    while (re.charAt(i) != ')' && re.charAt(i) != ':') {
+                        char f = re.charAt(i++);
+                        if (f == '-') {
+                            on = false;
+                        } else if (f == 'x' || f == 'u' || f == 'U') {
+                            throw new IllegalArgumentException("unsupported flag " + f);
+                        } else if (f == 's' && on) {
+                            dotall = true;
+                        } else if (f == 'd' && on) {
+                            unixLines = true;
+                        }
+                    }
+                    if (re.charAt(i++) == ')') {
+                        return NONE;
+                    }
+                }
+            }
+            alternation();
+            if (!more() || re.charAt(i++) != ')') {
+                throw new IllegalArgumentException("unclosed group");
+            }
+            return ZERO;
+        }
+
+        /**
+         * Parses an escape outside a class, after the backslash: a
+         * literal, or a zero-width or wide atom.
+         */
+        char[] escape() {
+            char c = re.charAt(i++);
+            switch (c) {
+                case 'b': case 'B': case 'A': case 'z': case 'Z':
+                    return ZERO;
+                case 'G':
+                    // region() resets the matcher, so \G would match at every line
+                    throw new IllegalArgumentException("unsupported \\G");
+                case 'w': case 'd': case 'h': case 'V':
+                    return ANY;
+                case 'k':
+                    i = re.indexOf('>', i) + 1;
+                    return ANY;
+                case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
+                    while (more() && Character.isDigit(peek())) {
+                        i++;
+                    }
+                    return ANY;
+                case 'W': case 'D': case 's': case 'S': case 'H': case 'v': case 'R': case 'X':
+                    lineSafe = false;
+                    return ANY;
+                case 'p': case 'P': case 'N':
+                    lineSafe = false;
+                    if (more() && peek() == '{') {
+                        i = re.indexOf('}', i) + 1;
+                    } else {
+                        i++;
+                    }
+                    return ANY;
+                default:
+                    int cp = escapedChar(c);
+                    return cp > Character.MAX_VALUE ? ANY : literal((char) cp);
+            }
+        }
+
+        /**
+         * Returns the char denoted by an escape that stands for a single
+         * char, after the backslash and c.
+         */
+        int escapedChar(char c) {
+            switch (c) {
+                case 't': return '\t';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'a': return '\u0007';
+                case 'e': return '\u001b';
+                case 'c': return re.charAt(i++) ^ 64;
+                case '0': {
+                    int v = 0;
+                    for (int k = 0; k < 3 && more() && peek() >= '0' && peek() <= '7'
+                                    && v * 8 + (peek() - '0') <= 0377; k++) {
+                        v = v * 8 + (re.charAt(i++) - '0');
+                    }
+                    return v;
+                }
+                case 'x':
+                    if (peek() == '{') {
+                        int close = re.indexOf('}', i);
+                        int v = Integer.parseInt(re.substring(i + 1, close), 16);
+                        i = close + 1;
+                        return v;
+                    }
+                    i += 2;
+                    return Integer.parseInt(re.substring(i - 2, i), 16);
+                case 'u':
+                    i += 4;
+                    return Integer.parseInt(re.substring(i - 4, i), 16);
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new IllegalArgumentException("unsupported escape \\" + c);
+                    }
+                    return c;
+            }
+        }
+
+        /** Parses a character class, after the [. */
+        char[] charClass() {
+            boolean negated = more() && peek() == '^';
+            if (negated) {
+                i++;
+            }
+            StringBuilder chars = new StringBuilder();
+            boolean wide = false;
+            boolean first = true;
+            while (true) {
+                char c = re.charAt(i++);
+                if (c == ']' && !first) {
+                    break;
+                }
+                first = false;
+                if (c == '[' || (c == '&' && peek() == '&')) {
+                    // unions and intersections: give up on this class
+                    lineSafe = false;
+                    skipClass(c == '[' ? 2 : 1);
+                    return ANY;
+                }
+                int lo;
+                if (c == '\\') {
+                    char e = re.charAt(i++);
+                    if ("wdhV".indexOf(e) >= 0) {
+                        wide = true;
+                        continue;
+                    }
+                    if ("WDsSHvpPRXN".indexOf(e) >= 0) {
+                        lineSafe = false;
+                        if ((e == 'p' || e == 'P' || e == 'N') && peek() == '{') {
+                            i = re.indexOf('}', i) + 1;
+                        } else if (e == 'p' || e == 'P') {
+                            i++;
+                        }
+                        wide = true;
+                        continue;
+                    }
+                    lo = escapedChar(e);
+                } else {
+                    lo = c;
+                }
+                int hi = lo;
+                if (peek() == '-' && re.charAt(i + 1) != ']') {
+                    i++;
+                    char d = re.charAt(i++);
+                    hi = d == '\\' ? escapedChar(re.charAt(i++)) : d;
+                }
+                if (lo <= '\n' && '\n' <= hi || lo <= '\r' && '\r' <= hi) {
+                    lineSafe = false;
+                }
+                if (hi - lo >= CLASS_CAP || hi > Character.MAX_VALUE) {
+                    wide = true;
+                } else {
+                    for (int ch = lo; ch <= hi; ch++) {
+                        char lower = Character.toLowerCase((char) ch);
+                        if (chars.indexOf(String.valueOf(lower)) < 0) {
+                            chars.append(lower);
+                        }
+                    }
+                }
+            }
+            if (negated) {
+                lineSafe = false;
+                return ANY;
+            }
+            if (wide || chars.length() > CLASS_CAP || chars.length() == 0) {
+                return ANY;
+            }
+            return chars.toString().toCharArray();
+        }
+
+        /** Skips to the end of the class, with depth ] still to close. */
+        void skipClass(int depth) {
+            while (depth > 0) {
+                char c = re.charAt(i++);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package support;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Counts occurrences of words, as a drop-in for
+ *
+ *     collect(groupingBy(identity(), counting()))
+ *
+ * without a boxed Long per increment or a map node per word. The words,
+ * their cached hashes and their counts are kept in parallel arrays indexed
+ * by an open-addressing (linear probing) table.
+ *
+ * Words can be added as any CharSequence, such as the reused views given by
+ * Tokenizer; a String is only made for a word the first time it's seen.
+ * The counts are converted to a Map<String, Long> only if toMap() is
+ * called.
+ *
+ * Not thread-safe; the collector gives each thread its own instance.
+ */
+public final class WordCounts {
+    static final int INITIAL_CAPACITY = 64;
+
+    String[] words;
+    int[] hashes;
+    long[] counts;
+    int size;
+
+    public WordCounts() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a counter sized for the given number of distinct words.
+     */
+    public WordCounts(int expectedWords) {
+        int capacity = Integer.highestOneBit(Math.max(expectedWords, 2) * 2 - 1) << 1;
+        words = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+    }
+
+    /** Same as String.hashCode(), for any CharSequence. */
+    static int hash(CharSequence word) {
+        if (word instanceof String) {
+            return word.hashCode();
+        }
+        int h = 0;
+        for (int i = 0, n = word.length(); i < n; i++) {
+            h = 31 * h + word.charAt(i);
+        }
+        return h;
+    }
+
+    static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    static boolean equals(String s, CharSequence word) {
+        return word instanceof String ? s.equals(word) : s.contentEquals(word);
+    }
+
+    /**
+     * Returns the slot holding the word, or the empty slot where it would
+     * go.
+     */
+    int slot(CharSequence word, int h) {
+        int mask = words.length - 1;
+        int slot = mix(h) & mask;
+        String w;
+        while ((w = words[slot]) != null && (hashes[slot] != h || !equals(w, word))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Adds one occurrence of the word. */
+    public void add(CharSequence word) {
+        add(word, 1L);
+    }
+
+    /** Adds the given number of occurrences of the word. */
+    public void add(CharSequence word, long count) {
+        int h = hash(word);
+        int slot = slot(word, h);
+        if (words[slot] == null) {
+            words[slot] = word.toString();
+            hashes[slot] = h;
+            if (++size * 2 > words.length) {
+                counts[slot] = count;
+                grow();
+                return;
+            }
+        }
+        counts[slot] += count;
+    }
+
+    /** Adds all the counts of the other counter to this one. */
+    public WordCounts addAll(WordCounts other) {
+        for (int i = 0; i < other.words.length; i++) {
+            String w = other.words[i];
+            if (w != null) {
+                int slot = slot(w, other.hashes[i]);
+                if (words[slot] == null) {
+                    words[slot] = w;
+                    hashes[slot] = other.hashes[i];
+                    counts[slot] = other.counts[i];
+                    if (++size * 2 > words.length) {
+                        grow();
+                    }
+                } else {
+                    counts[slot] += other.counts[i];
+                }
+            }
+        }
+        return this;
+    }
+
+    void grow() {
+        String[] oldWords = words;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        words = new String[oldWords.length * 2];
+        hashes = new int[words.length];
+        counts = new long[words.length];
+        int mask = words.length - 1;
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] != null) {
+                int slot = mix(oldHashes[i]) & mask;
+                while (words[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                words[slot] = oldWords[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /** Returns the count of the word, or 0 if it hasn't been seen. */
+    public long get(CharSequence word) {
+        int slot = slot(word, hash(word));
+        return words[slot] == null ? 0L : counts[slot];
+    }
+
+    /** Returns the number of distinct words. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the total of all the counts. */
+    public long total() {
+        long total = 0;
+        for (int i = 0; i < words.length; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /** Passes each word and its count to the action, in no particular order. */
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != null) {
+                action.accept(words[i], counts[i]);
+            }
+        }
+    }
+
+    /** Returns the counts as a new, mutable Map. */
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new HashMap<>(size * 4 / 3 + 1);
+        forEach(map::put);
+        return map;
+    }
+
+    /**
+     * Returns a Collector that counts words into a WordCounts.
+     */
+    public static Collector<CharSequence, ?, WordCounts> counting() {
+        return Collector.of(WordCounts::new, WordCounts::add, WordCounts::addAll,
+                            Collector.Characteristics.UNORDERED,
+                            Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Returns a Collector that counts words into a Map, with the same result
+     * as groupingBy(identity(), counting()).
+     */
+    public static Collector<CharSequence, ?, Map<String, Long>> countingToMap() {
+        return Collectors.collectingAndThen(counting(), WordCounts::toMap);
+    }
+}
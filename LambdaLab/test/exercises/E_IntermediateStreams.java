@@ -3,8 +3,6 @@ package exercises;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.AbstractCollection;
 import java.util.AbstractList;
@@ -24,6 +22,8 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import support.Corpus;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -275,8 +275,7 @@ public class E_IntermediateStreams {
 
     @Before
     public void z_setUpBufferedReader() throws IOException {
-        reader = Files.newBufferedReader(
-                Paths.get("SonnetI.txt"), StandardCharsets.UTF_8);
+        reader = Corpus.of(Paths.get("SonnetI.txt")).newBufferedReader();
     }
 
     @After
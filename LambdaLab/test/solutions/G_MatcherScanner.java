@@ -1,8 +1,6 @@
 package solutions;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Comparator;
 import java.util.regex.Pattern;
@@ -17,6 +15,8 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import support.Corpus;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -150,7 +150,6 @@ public class G_MatcherScanner {
 
     @Before
     public void z_readFileIntoString() throws IOException {
-        SONNET = new String(Files.readAllBytes(Paths.get("SonnetI.txt")),
-                            StandardCharsets.UTF_8);
+        SONNET = Corpus.of(Paths.get("SonnetI.txt")).toString();
     }
 }
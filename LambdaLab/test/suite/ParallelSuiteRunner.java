@@ -0,0 +1,114 @@
+package suite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.internal.TextListener;
+import org.junit.runner.Computer;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.Runner;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * Runs the classes listed in JUnit4TestSuite in-process, with the classes,
+ * and the test methods within each class, run concurrently.
+ *
+ * Usage: ParallelSuiteRunner [threads]
+ *
+ * or, from Ant: ant test-parallel [-Dtest.parallel.threads=N]
+ *
+ * This is like JUnit's ParallelComputer, except that the pools are bounded
+ * by the thread count (if absent or 0, the number of available processors).
+ * The classes and the methods are scheduled on separate pools, so a class
+ * waiting for its methods to finish can't starve them of threads.
+ *
+ * No extra fixture isolation is needed: JUnit creates a new instance of the
+ * test class for every test method, so the fields set up by the z_setUp...
+ * and z_read... @Before methods (reader, SONNET) belong to a single test,
+ * and each test opens and closes its own reader.
+ */
+public class ParallelSuiteRunner extends Computer {
+    final ExecutorService classPool;
+    final ExecutorService methodPool;
+
+    ParallelSuiteRunner(int threads) {
+        classPool = Executors.newFixedThreadPool(threads);
+        methodPool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Makes the runner run its children as tasks on the pool, and wait for
+     * all of them to finish.
+     */
+    static Runner parallelize(Runner runner, ExecutorService pool) {
+        if (runner instanceof ParentRunner) {
+            ((ParentRunner<?>) runner).setScheduler(new RunnerScheduler() {
+                final List<Future<?>> children = new ArrayList<>();
+
+                public synchronized void schedule(Runnable child) {
+                    children.add(pool.submit(child));
+                }
+
+                public void finished() {
+                    List<Future<?>> list;
+                    synchronized (this) {
+                        list = new ArrayList<>(children);
+                    }
+                    try {
+                        for (Future<?> f : list) {
+                            f.get();
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException ee) {
+                        throw new RuntimeException(ee.getCause());
+                    }
+                }
+            });
+        }
+        return runner;
+    }
+
+    @Override
+    public Runner getSuite(RunnerBuilder builder, Class<?>[] classes) throws InitializationError {
+        return parallelize(super.getSuite(builder, classes), classPool);
+    }
+
+    @Override
+    protected Runner getRunner(RunnerBuilder builder, Class<?> testClass) throws Throwable {
+        return parallelize(super.getRunner(builder, testClass), methodPool);
+    }
+
+    void shutdown() {
+        classPool.shutdown();
+        methodPool.shutdown();
+    }
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        Class<?>[] classes = JUnit4TestSuite.class.getAnnotation(Suite.SuiteClasses.class).value();
+
+        ParallelSuiteRunner computer = new ParallelSuiteRunner(threads);
+        JUnitCore core = new JUnitCore();
+        core.addListener(new TextListener(System.out));
+        Result result;
+        try {
+            result = core.run(computer, classes);
+        } finally {
+            computer.shutdown();
+        }
+        System.exit(result.wasSuccessful() ? 0 : 1);
+    }
+}
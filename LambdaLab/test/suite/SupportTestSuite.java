@@ -0,0 +1,29 @@
+package suite;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Tests of the classes in src/support, kept apart from the exercises.
+ * Run with: ant test-support
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses(value={
+    support.AtomicOutputTest.class,
+    support.CorpusTest.class,
+    support.CountMinSketchTest.class,
+    support.GrindServerTest.class,
+    support.GrindTest.class,
+    support.HyperLogLogTest.class,
+    support.InvertedIndexTest.class,
+    support.LineSpliteratorTest.class,
+    support.ManifestTest.class,
+    support.PartitionedGroupingTest.class,
+    support.SuiteDaemonTest.class,
+    support.TokenizerTest.class,
+    support.TopKTest.class,
+    support.TrigramIndexTest.class,
+    support.WordCountsTest.class
+})
+public class SupportTestSuite {
+}
@@ -0,0 +1,444 @@
+package suite;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.internal.TextListener;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Runs only the tests affected by changes made since the last run.
+ *
+ * Usage: TestImpact [-all] [-n]
+ *
+ * or, from Ant: ant test-impact
+ *
+ * Each test class in test/solutions and test/exercises is split into
+ * regions: one for each @Test method, and a shared region holding
+ * everything else (fields, fixtures, helpers, nested classes). A test's
+ * fingerprint is the hash of its own region, its class's shared region,
+ * and the contents of the resource files (such as SonnetI.txt) named by
+ * string literals in either. Comments and whitespace are not part of the
+ * fingerprint, so editing them selects nothing.
+ *
+ * The fingerprints of the tests that passed are kept in the impact map,
+ * build/test-impact.properties, and a test is selected if its fingerprint
+ * differs from the recorded one; a test that fails stays selected until it
+ * passes. Everything else in the source and test trees (model, suite, src)
+ * is hashed as a whole, and if that hash has changed, or if the map is
+ * missing or was written by another version of this class, the map is
+ * stale and all the tests are run.
+ *
+ * -all forces a full run; -n prints the selected tests without running them.
+ */
+public class TestImpact {
+    static final String VERSION = "1";
+    static final String VERSION_KEY = "#version";
+    static final String GLOBAL_KEY = "#global";
+    static final Path MAP = Paths.get("build", "test-impact.properties");
+    static final String[] TEST_PACKAGES = { "solutions", "exercises" };
+
+    final Path baseDir;
+
+    /** Fingerprint of each test, by Class#method. */
+    final Map<String, String> fingerprints = new TreeMap<>();
+
+    /** Hash of everything that isn't a mapped test class. */
+    String global;
+
+    final Set<Path> mapped = new HashSet<>();
+    final Map<Path, String> resourceHashes = new HashMap<>();
+
+    TestImpact(Path baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    static String hash(byte[]... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                md.update(part);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new AssertionError(nsae);
+        }
+    }
+
+    static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * If a comment or a string or character literal starts at index i,
+     * returns the index just past its end; otherwise returns i.
+     */
+    static int skip(String src, int i) {
+        int n = src.length();
+        if (src.startsWith("//", i)) {
+            int j = src.indexOf('\n', i);
+            return j < 0 ? n : j + 1;
+        }
+        if (src.startsWith("/*", i)) {
+            int j = src.indexOf("*/", i + 2);
+            return j < 0 ? n : j + 2;
+        }
+        char c = src.charAt(i);
+        if (c == '"' || c == '\'') {
+            int j = i + 1;
+            while (j < n && src.charAt(j) != c && src.charAt(j) != '\n') {
+                j += src.charAt(j) == '\\' ? 2 : 1;
+            }
+            return Math.min(j + 1, n);
+        }
+        return i;
+    }
+
+    /**
+     * Returns the [start, end) ranges of the @Test methods of the top-level
+     * class in src, from the annotation to the method's closing brace.
+     */
+    static List<int[]> testRegions(String src) {
+        List<int[]> regions = new ArrayList<>();
+        int depth = 0;
+        int parens = 0;
+        int pending = -1;
+        int start = -1;
+        for (int i = 0, n = src.length(); i < n; ) {
+            int j = skip(src, i);
+            if (j != i) {
+                i = j;
+                continue;
+            }
+            char c = src.charAt(i);
+            if (c == '(') {
+                parens++;
+            } else if (c == ')') {
+                parens--;
+            } else if (c == '{') {
+                if (depth == 1 && parens == 0 && pending >= 0) {
+                    start = pending;
+                    pending = -1;
+                }
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 1 && start >= 0) {
+                    regions.add(new int[] { start, i + 1 });
+                    start = -1;
+                }
+            } else if (c == '@' && depth == 1 && pending < 0 && start < 0
+                       && src.startsWith("@Test", i)
+                       && (i + 5 == n || !Character.isJavaIdentifierPart(src.charAt(i + 5)))) {
+                pending = i;
+            }
+            i++;
+        }
+        return regions;
+    }
+
+    /**
+     * Returns the code in src[from, to) with comments dropped and runs of
+     * whitespace collapsed, adding the values of any string literals to
+     * literals.
+     */
+    static String normalize(String src, int from, int to, Set<String> literals) {
+        StringBuilder sb = new StringBuilder();
+        boolean space = false;
+        for (int i = from; i < to; ) {
+            int j = Math.min(skip(src, i), to);
+            char c = src.charAt(i);
+            if (j != i) {
+                if (c == '"' || c == '\'') {
+                    if (space && sb.length() > 0) {
+                        sb.append(' ');
+                    }
+                    space = false;
+                    sb.append(src, i, j);
+                    if (c == '"' && j - i >= 2) {
+                        literals.add(src.substring(i + 1, j - 1));
+                    }
+                } else {
+                    space = true;
+                }
+                i = j;
+            } else {
+                if (Character.isWhitespace(c)) {
+                    space = true;
+                } else {
+                    if (space && sb.length() > 0) {
+                        sb.append(' ');
+                    }
+                    space = false;
+                    sb.append(c);
+                }
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the name of the method declared in a normalized @Test region.
+     */
+    static String methodName(String region) {
+        String decl = region.substring(0, region.indexOf('{'))
+                            .replaceAll("@\\w+(\\s*\\([^)]*\\))?", "");
+        int paren = decl.indexOf('(');
+        String[] words = decl.substring(0, paren).trim().split("\\s+");
+        return words[words.length - 1];
+    }
+
+    /**
+     * Returns "name=hash" lines for the literals that name files in the
+     * project directory.
+     */
+    String resources(Set<String> literals) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String literal : new TreeSet<>(literals)) {
+            Path p;
+            try {
+                p = baseDir.resolve(literal);
+            } catch (InvalidPathException ipe) {
+                continue;
+            }
+            if (!literal.isEmpty() && Files.isRegularFile(p)) {
+                String h = resourceHashes.get(p);
+                if (h == null) {
+                    h = hash(Files.readAllBytes(p));
+                    resourceHashes.put(p, h);
+                }
+                sb.append(literal).append('=').append(h).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Computes the fingerprints of the tests in one class.
+     */
+    void analyze(Path file, String className) throws IOException {
+        String src = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        List<int[]> regions = testRegions(src);
+        if (regions.isEmpty()) {
+            return;
+        }
+        mapped.add(file);
+
+        Set<String> sharedLiterals = new HashSet<>();
+        StringBuilder shared = new StringBuilder();
+        int prev = 0;
+        for (int[] r : regions) {
+            shared.append(normalize(src, prev, r[0], sharedLiterals)).append('\n');
+            prev = r[1];
+        }
+        shared.append(normalize(src, prev, src.length(), sharedLiterals));
+        String sharedHash = hash(utf8(shared.toString()));
+
+        for (int[] r : regions) {
+            Set<String> literals = new HashSet<>(sharedLiterals);
+            String region = normalize(src, r[0], r[1], literals);
+            fingerprints.put(className + "#" + methodName(region),
+                             hash(utf8(sharedHash), utf8(region), utf8(resources(literals))));
+        }
+    }
+
+    /**
+     * Fingerprints all the test classes, then hashes everything else.
+     */
+    void analyze() throws IOException {
+        for (String pkg : TEST_PACKAGES) {
+            Path dir = baseDir.resolve(Paths.get("test", pkg));
+            List<Path> files;
+            try (Stream<Path> s = Files.list(dir)) {
+                files = s.filter(p -> p.toString().endsWith(".java"))
+                         .sorted()
+                         .collect(Collectors.toList());
+            } catch (NoSuchFileException nsfe) {
+                continue;
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                analyze(file, pkg + "." + name.substring(0, name.length() - ".java".length()));
+            }
+        }
+
+        List<byte[]> parts = new ArrayList<>();
+        for (String dir : new String[] { "src", "test" }) {
+            List<Path> files;
+            try (Stream<Path> s = Files.walk(baseDir.resolve(dir))) {
+                files = s.filter(Files::isRegularFile)
+                         .filter(p -> !mapped.contains(p))
+                         .sorted()
+                         .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                parts.add(utf8(baseDir.relativize(file) + "\n"));
+                parts.add(Files.readAllBytes(file));
+            }
+        }
+        global = hash(parts.toArray(new byte[0][]));
+    }
+
+    /**
+     * Returns the previous impact map, or null if there is none.
+     */
+    static Properties load() throws IOException {
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(MAP, StandardCharsets.UTF_8)) {
+            props.load(r);
+        } catch (NoSuchFileException nsfe) {
+            return null;
+        }
+        return props;
+    }
+
+    /**
+     * Records the fingerprints of all the tests except those that failed.
+     */
+    void save(Result result) throws IOException {
+        Set<String> failed = new HashSet<>();
+        Set<String> failedClasses = new HashSet<>();
+        for (Failure f : result.getFailures()) {
+            Description d = f.getDescription();
+            if (d.getMethodName() == null) {
+                failedClasses.add(d.getClassName());
+            } else {
+                failed.add(d.getClassName() + "#" + d.getMethodName());
+            }
+        }
+
+        Properties props = new Properties();
+        props.setProperty(VERSION_KEY, VERSION);
+        props.setProperty(GLOBAL_KEY, global);
+        fingerprints.forEach((test, fp) -> {
+            if (!failed.contains(test) && !failedClasses.contains(test.substring(0, test.indexOf('#')))) {
+                props.setProperty(test, fp);
+            }
+        });
+        Files.createDirectories(MAP.getParent());
+        try (Writer w = Files.newBufferedWriter(MAP, StandardCharsets.UTF_8)) {
+            props.store(w, "TestImpact: fingerprints of passing tests");
+        }
+    }
+
+    /**
+     * Runs the given tests in a single JUnit run.
+     */
+    static Result run(Set<String> tests) throws ClassNotFoundException {
+        Set<Class<?>> classes = new LinkedHashSet<>();
+        for (String test : tests) {
+            classes.add(Class.forName(test.substring(0, test.indexOf('#'))));
+        }
+        Request request = Request.classes(classes.toArray(new Class<?>[0]))
+                                 .filterWith(new Filter() {
+            @Override
+            public boolean shouldRun(Description d) {
+                if (d.isTest()) {
+                    return tests.contains(d.getClassName() + "#" + d.getMethodName());
+                }
+                for (Description child : d.getChildren()) {
+                    if (shouldRun(child)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public String describe() {
+                return "tests affected by changes";
+            }
+        });
+
+        JUnitCore core = new JUnitCore();
+        core.addListener(new TextListener(System.out));
+        return core.run(request);
+    }
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        boolean all = false;
+        boolean dryRun = false;
+        for (String arg : args) {
+            switch (arg) {
+                case "-all":
+                    all = true;
+                    break;
+                case "-n":
+                    dryRun = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+
+        TestImpact impact = new TestImpact(Paths.get("").toAbsolutePath());
+        impact.analyze();
+        Properties previous = load();
+
+        String reason = null;
+        if (all) {
+            reason = "-all";
+        } else if (previous == null) {
+            reason = "no impact map";
+        } else if (!VERSION.equals(previous.getProperty(VERSION_KEY))) {
+            reason = "impact map is from another version";
+        } else if (!impact.global.equals(previous.getProperty(GLOBAL_KEY))) {
+            reason = "sources outside the test classes changed";
+        }
+
+        Set<String> selected = new TreeSet<>();
+        impact.fingerprints.forEach((test, fp) -> {
+            if (previous == null || !fp.equals(previous.getProperty(test))) {
+                selected.add(test);
+            }
+        });
+        if (reason != null) {
+            selected.addAll(impact.fingerprints.keySet());
+            System.out.printf("running all %d tests (%s)%n", selected.size(), reason);
+        } else {
+            System.out.printf("running %d of %d tests%n", selected.size(), impact.fingerprints.size());
+        }
+
+        if (dryRun) {
+            selected.forEach(System.out::println);
+            return;
+        }
+        if (selected.isEmpty()) {
+            return;
+        }
+        Result result = run(selected);
+        impact.save(result);
+        System.exit(result.wasSuccessful() ? 0 : 1);
+    }
+}
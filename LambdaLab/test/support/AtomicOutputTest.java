@@ -0,0 +1,72 @@
+package support;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests that AtomicOutput replaces its target only when committed, and
+ * never leaves a temporary file behind.
+ */
+public class AtomicOutputTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    static final byte[] OLD = "old\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] NEW = "new contents\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void committedOutputReplacesTarget() throws IOException {
+        Path target = tmp.newFile("Out.java").toPath();
+        Files.write(target, OLD);
+        Path temp;
+        try (AtomicOutput out = new AtomicOutput(target)) {
+            temp = out.temp;
+            out.write(ByteBuffer.wrap(NEW));
+            out.commit();
+        }
+        assertArrayEquals(NEW, Files.readAllBytes(target));
+        assertFalse(Files.exists(temp));
+        assertEquals(1, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void uncommittedOutputLeavesTargetUnchanged() throws IOException {
+        Path target = tmp.newFile("Out.java").toPath();
+        Files.write(target, OLD);
+        Path temp;
+        try (AtomicOutput out = new AtomicOutput(target)) {
+            temp = out.temp;
+            out.write(ByteBuffer.wrap(NEW));
+        }
+        assertArrayEquals(OLD, Files.readAllBytes(target));
+        assertFalse(Files.exists(temp));
+        assertEquals(1, tmp.getRoot().list().length);
+    }
+
+    @Test
+    public void failedWriteLeavesNoTarget() throws IOException {
+        Path target = tmp.getRoot().toPath().resolve("Missing.java");
+        Path temp = null;
+        try (AtomicOutput out = new AtomicOutput(target)) {
+            temp = out.temp;
+            out.write(ByteBuffer.wrap(NEW));
+            throw new IOException("interrupted");
+        } catch (IOException expected) {
+            // the output was closed without a commit
+        }
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(temp));
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+}
@@ -0,0 +1,135 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of Corpus, mostly with 16-byte chunks so that every view crosses
+ * chunk boundaries.
+ */
+public class CorpusTest {
+    static final int SMALL_SHIFT = 4;
+
+    static final String ASCII =
+        "From fairest creatures we desire increase,\n" +
+        "That thereby beauty's rose might never die,\r\n" +
+        "But as the riper should by time decease,\n" +
+        "His tender heir might bear his memory:";
+
+    // multi-byte chars land on either side of chunk boundaries
+    static final String UTF8 = ASCII.replace("e", "é").replace("o", "€");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    Path write(String text) throws IOException {
+        Path path = tmp.newFile().toPath();
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    @Test
+    public void toStringCrossesChunks() throws IOException {
+        Corpus c = new Corpus(write(ASCII), SMALL_SHIFT);
+        assertTrue(c.chunks.length > 1);
+        assertEquals(ASCII, c.toString());
+    }
+
+    @Test
+    public void toStringDecodesAcrossChunks() throws IOException {
+        Corpus c = new Corpus(write(UTF8), SMALL_SHIFT);
+        assertEquals(UTF8, c.toString());
+        assertEquals(UTF8, c.chars().toString());
+    }
+
+    @Test
+    public void asciiViewCrossesChunks() throws IOException {
+        Corpus c = new Corpus(write(ASCII), SMALL_SHIFT);
+        CharSequence chars = c.chars();
+        assertEquals(ASCII, chars.toString());
+        for (int from = 0; from < ASCII.length(); from += 7) {
+            for (int to = from; to <= ASCII.length(); to += 11) {
+                assertEquals(ASCII.substring(from, to), chars.subSequence(from, to).toString());
+            }
+        }
+        assertEquals(ASCII.substring(20, 60).substring(5, 30),
+                     chars.subSequence(20, 60).subSequence(5, 30).toString());
+    }
+
+    @Test
+    public void isAsciiFindsLateNonAscii() throws IOException {
+        Corpus c = new Corpus(write(ASCII + "é"), SMALL_SHIFT);
+        assertFalse(c.isAscii());
+        assertTrue(new Corpus(write(ASCII), SMALL_SHIFT).isAscii());
+    }
+
+    @Test
+    public void inputStreamCrossesChunks() throws IOException {
+        Corpus c = new Corpus(write(UTF8), SMALL_SHIFT);
+        byte[] expected = UTF8.getBytes(StandardCharsets.UTF_8);
+        byte[] actual = new byte[expected.length];
+        try (InputStream in = c.newInputStream()) {
+            int n = 0;
+            int r;
+            while ((r = in.read(actual, n, Math.min(100, actual.length - n))) > 0) {
+                n += r;
+            }
+            assertEquals(expected.length, n);
+            assertEquals(-1, in.read());
+        }
+        assertEquals(UTF8, new String(actual, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readerAndLinesCrossChunks() throws IOException {
+        Corpus c = new Corpus(write(UTF8), SMALL_SHIFT);
+        String expected = new BufferedReader(new StringReader(UTF8))
+            .lines().collect(Collectors.joining("\n"));
+        try (BufferedReader reader = c.newBufferedReader()) {
+            assertEquals(expected, reader.lines().collect(Collectors.joining("\n")));
+        }
+        assertEquals(expected, c.lines().collect(Collectors.joining("\n")));
+    }
+
+    @Test
+    public void ofReusesUnchangedFile() throws IOException {
+        Path path = write(ASCII);
+        assertSame(Corpus.of(path), Corpus.of(path));
+    }
+
+    @Test
+    public void ofRemapsReplacedFileWithSameSizeAndTime() throws IOException {
+        Path path = write(ASCII);
+        FileTime time = Files.getLastModifiedTime(path);
+        Corpus before = Corpus.of(path);
+
+        String replaced = ASCII.toUpperCase();
+        Path other = write(replaced);
+        Files.setLastModifiedTime(other, time);
+        Files.move(other, path, StandardCopyOption.REPLACE_EXISTING);
+        Corpus after = Corpus.of(path);
+
+        if (before.fileKey != null) {
+            assertNotSame(before, after);
+            assertEquals(replaced, after.toString());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package support;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the count-min sketch's heavy hitter tracking.
+ */
+public class CountMinSketchTest {
+    /** "a" 30%, "b" 10%, "c" 5%, then many rare words. */
+    static String[] stream() {
+        Random random = new Random(42);
+        return IntStream.range(0, 100_000)
+                        .mapToObj(i -> {
+                            int r = random.nextInt(100);
+                            return r < 30 ? "a" : r < 40 ? "b" : r < 45 ? "c" : "w" + random.nextInt(50_000);
+                        })
+                        .toArray(String[]::new);
+    }
+
+    @Test
+    public void heavyHittersFromReusedView() {
+        CountMinSketch sketch = CountMinSketch.forError(0.001, 0.01, 0.04);
+        StringBuilder view = new StringBuilder();
+        for (String word : stream()) {
+            view.setLength(0);
+            sketch.add(view.append(word));
+        }
+        Map<String, Long> heavy = sketch.heavyHitters();
+        assertEquals("[a, b, c]", heavy.keySet().toString());
+        assertTrue(sketch.candidates.size() <= 2 / 0.04);
+    }
+
+    @Test
+    public void parallelCollectorMatchesSequential() {
+        String[] words = stream();
+        Map<String, Long> sequential = Stream.of(words)
+            .collect(CountMinSketch.heavyHitters(0.001, 0.01, 0.04));
+        Map<String, Long> parallel = Stream.of(words).parallel()
+            .collect(CountMinSketch.heavyHitters(0.001, 0.01, 0.04));
+        assertEquals(sequential.keySet(), parallel.keySet());
+        assertEquals(Stream.of("a", "b", "c").collect(Collectors.toSet()), parallel.keySet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void epsilonNotBelowPhiIsRejected() {
+        CountMinSketch.forError(0.01, 0.01, 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void narrowTableForPhiIsRejected() {
+        new CountMinSketch(100, 4, true, 0.01);
+    }
+}
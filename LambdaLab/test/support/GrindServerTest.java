@@ -0,0 +1,169 @@
+package support;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of GrindServer over HTTP, on an ephemeral port.
+ */
+public class GrindServerTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    GrindServer server;
+    HttpServer http;
+    Path solutions;
+
+    @Before
+    public void setUp() throws IOException {
+        solutions = tmp.newFolder("solutions").toPath();
+        Files.write(solutions.resolve("A.java"),
+                    "package solutions;\n@Test\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(tmp.getRoot().toPath().resolve("Secret.java"),
+                    "package secret;\n".getBytes(StandardCharsets.UTF_8));
+        server = new GrindServer(solutions);
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        http.createContext("/", server::handle);
+        http.start();
+    }
+
+    @After
+    public void tearDown() {
+        http.stop(0);
+    }
+
+    HttpURLConnection open(String path) throws IOException {
+        URL url = new URL("http", "localhost", http.getAddress().getPort(), path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    static String body(HttpURLConnection conn) throws IOException {
+        try (InputStream in = conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Sends the path as written, which URL and HttpURLConnection may not. */
+    int rawStatus(String path) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), http.getAddress().getPort())) {
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n"
+                                            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                response.write(buf, 0, n);
+            }
+            byte[] status = response.toByteArray();
+            return Integer.parseInt(new String(status, 9, 3, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void servesRenderedExercise() throws IOException {
+        HttpURLConnection conn = open("/exercises/A.java");
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("package exercises;" + Grind.LINE_SEPARATOR + "@Test @Ignore" + Grind.LINE_SEPARATOR,
+                     body(conn));
+        assertTrue(conn.getHeaderField("ETag").startsWith("\""));
+    }
+
+    @Test
+    public void revalidationGetsNotModified() throws IOException {
+        HttpURLConnection first = open("/exercises/A.java");
+        assertEquals(200, first.getResponseCode());
+        String etag = first.getHeaderField("ETag");
+        body(first);
+
+        HttpURLConnection second = open("/exercises/A.java");
+        second.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, second.getResponseCode());
+
+        HttpURLConnection stale = open("/exercises/A.java");
+        stale.setRequestProperty("If-None-Match", "\"0\"");
+        assertEquals(200, stale.getResponseCode());
+        body(stale);
+    }
+
+    @Test
+    public void missingFileIsNotFound() throws IOException {
+        for (String path : new String[] { "/exercises/Missing.java", "/exercises/A.txt", "/other/A.java" }) {
+            HttpURLConnection conn = open(path);
+            assertEquals(path, 404, conn.getResponseCode());
+            assertEquals("not found\n", body(conn));
+        }
+    }
+
+    @Test
+    public void pathTraversalIsNotFound() throws IOException {
+        assertEquals(200, rawStatus("/exercises/A.java"));
+        assertEquals(404, rawStatus("/exercises/../Secret.java"));
+        assertEquals(404, rawStatus("/exercises/%2e%2e/Secret.java"));
+        assertEquals(404, rawStatus("/exercises/x/../../Secret.java"));
+        assertEquals(404, rawStatus("/exercises/..%2fSecret.java"));
+    }
+
+    @Test
+    public void renderFailureIsServerError() throws IOException {
+        Files.write(solutions.resolve("Bad.java"), new byte[] { 'x', (byte) 0xff, '\n' });
+        HttpURLConnection conn = open("/exercises/Bad.java");
+        assertEquals(500, conn.getResponseCode());
+        body(conn);
+    }
+
+    @Test
+    public void invalidationDuringRenderLeavesNoRendering() throws Exception {
+        Path input = server.solutionsDir.resolve("A.java");
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    Files.write(input, ("package solutions;\n// " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                    server.invalidate(input);
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            } finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+        while (!done.get()) {
+            try {
+                server.get(input);
+            } catch (IOException ioe) {
+                // caught the file while it was being rewritten
+            }
+        }
+        writer.join();
+        // every cached rendering must still be reachable from a path
+        assertTrue(server.renderings.keySet() + " vs " + server.hashes.values(),
+                   server.hashes.values().containsAll(server.renderings.keySet()));
+    }
+}
@@ -0,0 +1,249 @@
+package support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the transformation rules, for both the line and the byte
+ * pipelines.
+ */
+public class GrindTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** A solution in a subpackage, as found by Grind -r. */
+    static final String NESTED_SOLUTION =
+        "package solutions.nested;\n" +
+        "\n" +
+        "import java.util.List;\n" +
+        "import solutions.A_Lambdas;\n" +
+        "import solutions.nested.deeper.Helper;\n" +
+        "import static solutions.nested.deeper.Helper.twice;\n" +
+        "\n" +
+        "public class Child {\n" +
+        "    @Test\n" +
+        "    public void c1() {\n" +
+        "        //TODO//int x = 0;\n" +
+        "        //BEGINREMOVE\n" +
+        "        int x = twice(1);\n" +
+        "        //ENDREMOVE\n" +
+        "    }\n" +
+        "}\n";
+
+    static final String NESTED_EXERCISE =
+        "package exercises.nested;\n" +
+        "\n" +
+        "import java.util.List;\n" +
+        "import exercises.A_Lambdas;\n" +
+        "import exercises.nested.deeper.Helper;\n" +
+        "import static exercises.nested.deeper.Helper.twice;\n" +
+        "\n" +
+        "public class Child {\n" +
+        "    @Test @Ignore\n" +
+        "    public void c1() {\n" +
+        "        int x = 0; // TODO\n" +
+        "    }\n" +
+        "}\n";
+
+    /** Only the package and import markers, which the copy check rejects. */
+    static final String IMPORTS_ONLY_SOLUTION =
+        "package solutions.nested;\n" +
+        "\n" +
+        "import static solutions.nested.deeper.Helper.twice;\n" +
+        "\n" +
+        "class Util { }\n";
+
+    static final String IMPORTS_ONLY_EXERCISE =
+        "package exercises.nested;\n" +
+        "\n" +
+        "import static exercises.nested.deeper.Helper.twice;\n" +
+        "\n" +
+        "class Util { }\n";
+
+    /** Returns the exercise generated from the solution, as written. */
+    String grindRaw(String solution, boolean mapped) throws IOException {
+        Path input = tmp.newFile().toPath();
+        Path output = tmp.getRoot().toPath().resolve("out.java");
+        Files.write(input, solution.getBytes(StandardCharsets.UTF_8));
+        Grind grind = new Grind();
+        grind.mapped = mapped;
+        grind.transform(input, output, new GrindStats.FileStats(input));
+        return new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the exercise generated from the solution, with \n line ends. */
+    String grind(String solution, boolean mapped) throws IOException {
+        return grindRaw(solution, mapped).replace(Grind.LINE_SEPARATOR, "\n");
+    }
+
+    @Test
+    public void nestedImportsAreRewrittenByLines() throws IOException {
+        assertEquals(NESTED_EXERCISE, grind(NESTED_SOLUTION, false));
+    }
+
+    @Test
+    public void nestedImportsAreRewrittenByBytes() throws IOException {
+        assertEquals(NESTED_EXERCISE, grind(NESTED_SOLUTION, true));
+    }
+
+    @Test
+    public void importsOnlyByLines() throws IOException {
+        assertEquals(IMPORTS_ONLY_EXERCISE, grind(IMPORTS_ONLY_SOLUTION, false));
+    }
+
+    @Test
+    public void importsOnlyByBytes() throws IOException {
+        assertEquals(IMPORTS_ONLY_EXERCISE, grind(IMPORTS_ONLY_SOLUTION, true));
+    }
+
+    @Test
+    public void crOnlyByBytesKeepsTerminators() throws IOException {
+        String solution = NESTED_SOLUTION.replace("\n", "\r");
+        assertEquals(NESTED_EXERCISE.replace("\n", "\r"), grindRaw(solution, true));
+        assertEquals(NESTED_EXERCISE, grind(solution, false));
+    }
+
+    @Test
+    public void crlfByBytesKeepsTerminators() throws IOException {
+        String solution = NESTED_SOLUTION.replace("\n", "\r\n");
+        assertEquals(NESTED_EXERCISE.replace("\n", "\r\n"), grindRaw(solution, true));
+        assertEquals(NESTED_EXERCISE, grind(solution, false));
+    }
+
+    @Test
+    public void mixedTerminatorsByBytes() throws IOException {
+        String solution = NESTED_SOLUTION.replaceFirst("\n", "\r").replaceFirst("\n", "\r\n");
+        String expected = NESTED_EXERCISE.replaceFirst("\n", "\r").replaceFirst("\n", "\r\n");
+        assertEquals(expected, grindRaw(solution, true));
+        assertEquals(NESTED_EXERCISE, grind(solution, false));
+    }
+
+    GrindStats.FileStats stats;
+
+    /** Grinds with the byte pipeline, keeping the file's stats. */
+    String grindStats(String solution) throws IOException {
+        Path input = tmp.newFile().toPath();
+        Path output = tmp.getRoot().toPath().resolve("out.java");
+        Files.write(input, solution.getBytes(StandardCharsets.UTF_8));
+        Grind grind = new Grind();
+        grind.mapped = true;
+        stats = new GrindStats.FileStats(input);
+        grind.transform(input, output, stats);
+        return new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void copiesFileWithOnlyPackageMarker() throws IOException {
+        assertEquals("package exercises;\n\nclass X {\n}\n", grindStats("package solutions;\n\nclass X {\n}"));
+        assertEquals("copy", stats.mode);
+        assertEquals(4, stats.linesKept);
+        assertEquals(1, stats.markers);
+    }
+
+    @Test
+    public void copiesFileWithNoMarker() throws IOException {
+        assertEquals("class Y {\r}\r", grindStats("class Y {\r}\r"));
+        assertEquals("copy", stats.mode);
+        assertEquals(2, stats.linesKept);
+        assertEquals(0, stats.markers);
+
+        assertEquals("class Z {\r\n\r\n}\n", grindStats("class Z {\r\n\r\n}\n"));
+        assertEquals(3, stats.linesKept);
+    }
+
+    @Test(expected = IOException.class)
+    public void transferPastEndOfInputFails() throws IOException {
+        Path input = tmp.newFile().toPath();
+        Files.write(input, "abc".getBytes(StandardCharsets.US_ASCII));
+        Path output = tmp.newFile().toPath();
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE)) {
+            ByteTransformer.transferFully(in, 0, 10, out);
+        }
+    }
+
+    @Test
+    public void substRewritesImports() {
+        Grind grind = new Grind();
+        assertEquals("import exercises.nested.Helper;", grind.subst("import solutions.nested.Helper;"));
+        assertEquals("import static exercises.Util.twice;", grind.subst("import static solutions.Util.twice;"));
+    }
+
+    /** Lines on which leftmost matching and chained replacement could differ. */
+    static final List<String> EDGE_LINES = Arrays.asList(
+        "        //TODO//int a = 0; //TODO//int b = 1;",
+        "//TODO////TODO//",
+        "        //BEGINREMOVE int c = 2; //ENDREMOVE",
+        "        int d = 3;",
+        "        //ENDREMOVE int e = 4; //BEGINREMOVE",
+        "        int f = 5;",
+        "        //ENDREMOVE",
+        "        String s = \"h\u00e9llo \u4e16\u754c\"; //TODO//s = \"\u00fc\"; \ud83d\ude00",
+        "        //UNCOMMENT//\u03c0();//TODO//\u00e9",
+        "\u00e9//UNCOMMENT////TODO//@Test\u00e9",
+        "import static solutions.\u00c9t\u00e9.twice;"
+    );
+
+    /** Returns the lines through subst and Sink, each followed by \n. */
+    static String bySubst(List<String> lines) throws IOException {
+        Grind grind = new Grind();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        Grind.Sink sink = new Grind.Sink(out);
+        lines.stream().map(grind::subst).forEach(sink);
+        out.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+
+    /** Returns the lines through one Transformer, each followed by \n. */
+    static String byTransformer(List<String> lines) {
+        Transformer transformer = new Transformer();
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            String out = transformer.apply(line);
+            if (out != null) {
+                sb.append(out).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void transformerMatchesSubstOnSolutions() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(new Grind().solutionsDir, "*.java")) {
+            dir.forEach(files::add);
+        }
+        assertTrue("no solutions found", files.size() > 0);
+        for (Path file : files) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(file.toString(), bySubst(lines), byTransformer(lines));
+        }
+    }
+
+    @Test
+    public void transformerMatchesSubstOnEdgeLines() throws IOException {
+        assertEquals(bySubst(EDGE_LINES), byTransformer(EDGE_LINES));
+        for (String line : EDGE_LINES) {
+            List<String> one = Arrays.asList(line, "x", "//ENDREMOVE", "y");
+            assertEquals(line, bySubst(one), byTransformer(one));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package support;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that HyperLogLog counts exactly below its threshold, and within a
+ * few standard errors above it, however sketches in either mode are merged.
+ */
+public class HyperLogLogTest {
+    static final double SIGMAS = 4;
+
+    static HyperLogLog sketch(int precision, int from, int to) {
+        HyperLogLog hll = new HyperLogLog(precision);
+        for (int i = from; i < to; i++) {
+            hll.add("word" + i);
+        }
+        return hll;
+    }
+
+    static void assertWithinError(HyperLogLog hll, long expected) {
+        double error = Math.abs(hll.cardinality() - expected) / (double) expected;
+        assertTrue("estimate " + hll.cardinality() + " for " + expected,
+                   error <= SIGMAS * hll.standardError());
+    }
+
+    @Test
+    public void smallCountsAreExact() {
+        for (int precision : new int[] { HyperLogLog.MIN_PRECISION, 10, HyperLogLog.DEFAULT_PRECISION }) {
+            int threshold = (1 << precision) / 2;
+            for (int n : new int[] { 0, 1, 2, threshold - 1, threshold }) {
+                HyperLogLog hll = sketch(precision, 0, n);
+                // duplicates don't count
+                for (int i = 0; i < n; i++) {
+                    hll.add("word" + i);
+                }
+                assertTrue(hll.isExact());
+                assertEquals(n, hll.cardinality());
+            }
+            assertFalse(sketch(precision, 0, threshold + 1).isExact());
+        }
+    }
+
+    @Test
+    public void zeroHashIsCounted() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.addHash(0L);
+        hll.addHash(0L);
+        hll.addHash(1L);
+        assertEquals(2, hll.cardinality());
+    }
+
+    @Test
+    public void largeCountsAreWithinError() {
+        for (int precision : new int[] { 8, HyperLogLog.DEFAULT_PRECISION, 14 }) {
+            for (int n : new int[] { 5_000, 50_000, 300_000 }) {
+                assertWithinError(sketch(precision, 0, n), n);
+            }
+        }
+    }
+
+    @Test
+    public void mergesAcrossModes() {
+        int n = 100_000;
+        // exact into sketch, sketch into exact, exact into exact past the
+        // threshold, and sketch into sketch, with overlaps
+        HyperLogLog exactIntoSketch = sketch(12, 0, n).merge(sketch(12, 0, 100));
+        assertWithinError(exactIntoSketch, n);
+
+        HyperLogLog sketchIntoExact = sketch(12, 0, 100).merge(sketch(12, 50, n));
+        assertWithinError(sketchIntoExact, n);
+
+        HyperLogLog exactIntoExact = sketch(12, 0, 2_000).merge(sketch(12, 1_000, 3_000));
+        assertFalse(exactIntoExact.isExact());
+        assertWithinError(exactIntoExact, 3_000);
+
+        HyperLogLog small = sketch(12, 0, 1_000).merge(sketch(12, 500, 1_500));
+        assertTrue(small.isExact());
+        assertEquals(1_500, small.cardinality());
+
+        HyperLogLog halves = sketch(12, 0, n / 2 + 1_000).merge(sketch(12, n / 2, n));
+        assertWithinError(halves, n);
+    }
+
+    @Test
+    public void mergedSketchEqualsSingleSketch() {
+        HyperLogLog whole = sketch(10, 0, 20_000);
+        HyperLogLog merged = new HyperLogLog(10);
+        for (int from = 0; from < 20_000; from += 1_000) {
+            merged.merge(sketch(10, from, from + 1_000));
+        }
+        assertEquals(whole.cardinality(), merged.cardinality());
+        assertArrayEquals(whole.registers(), merged.registers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeRejectsOtherPrecision() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    @Test
+    public void parallelCollectorIsWithinError() {
+        int n = 200_000;
+        List<String> words = IntStream.range(0, 2 * n).mapToObj(i -> "word" + (i % n)).collect(Collectors.toList());
+        long estimate = words.parallelStream().collect(HyperLogLog.distinct(HyperLogLog.DEFAULT_PRECISION));
+        assertTrue("estimate " + estimate,
+                   Math.abs(estimate - n) <= SIGMAS * new HyperLogLog().standardError() * n);
+        assertEquals(1_000, (long) words.subList(0, 1_000).parallelStream()
+                                        .collect(HyperLogLog.distinct(HyperLogLog.DEFAULT_PRECISION)));
+    }
+}
@@ -0,0 +1,168 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that InvertedIndex answers lines, and, or and phrase queries the
+ * same as a scan of each line's words, with and without case folding.
+ */
+public class InvertedIndexTest {
+    static final Pattern SPLIT_PATTERN = Pattern.compile("[- .:,]+");
+
+    static final String[] VOCABULARY = {
+        "the", "The", "THE", "rose", "Rose", "fair", "café", "Café", "ÉTÉ", "été", "世界", "a", "x",
+    };
+
+    static final String[] SEPARATORS = { " ", " ", " ", "-", ". ", ":", ",", " - " };
+
+    static final String[] TERMINATORS = { "\n", "\r", "\r\n", "\n\n", "\n - \n" };
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    String text;
+    List<List<String>> lineWords;
+
+    static String randomText(long seed, int lines) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (random.nextInt(5) == 0) {
+                sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            for (int n = random.nextInt(8); n > 0; n--) {
+                sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)])
+                  .append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)])
+              .append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+        }
+        return sb.append("no final newline").toString();
+    }
+
+    InvertedIndex build(String text, boolean foldCase) throws IOException {
+        this.text = text;
+        lineWords = new BufferedReader(new StringReader(text)).lines()
+            .map(line -> SPLIT_PATTERN.splitAsStream(line)
+                                      .filter(w -> !w.isEmpty())
+                                      .map(w -> foldCase ? w.toLowerCase(Locale.ROOT) : w)
+                                      .collect(Collectors.toList()))
+            .collect(Collectors.toList());
+        Path corpus = tmp.newFile().toPath();
+        Files.write(corpus, text.getBytes(StandardCharsets.UTF_8));
+        return InvertedIndex.build(Corpus.of(corpus), tmp.getRoot().toPath().resolve("index-" + foldCase), foldCase);
+    }
+
+    long[] scan(Predicate<List<String>> matches) {
+        List<Long> lines = new ArrayList<>();
+        for (int i = 0; i < lineWords.size(); i++) {
+            if (matches.test(lineWords.get(i))) {
+                lines.add((long) i);
+            }
+        }
+        return lines.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    static boolean containsPhrase(List<String> words, List<String> phrase) {
+        return !phrase.isEmpty() && Collections.indexOfSubList(words, phrase) >= 0;
+    }
+
+    void assertMatchesScan(InvertedIndex index, boolean foldCase) {
+        Random random = new Random(11);
+        List<String> queries = new ArrayList<>(Arrays.asList(VOCABULARY));
+        queries.add("absent");
+        queries.add("");
+        queries.add("théâtre");
+        for (String q : queries) {
+            String folded = foldCase ? q.toLowerCase(Locale.ROOT) : q;
+            assertArrayEquals(q, scan(words -> words.contains(folded)), index.lines(q));
+            assertEquals(q, lineWords.stream().flatMap(List::stream).filter(folded::equals).count(),
+                         index.count(q));
+        }
+        for (int k = 0; k < 300; k++) {
+            String[] words = new String[1 + random.nextInt(3)];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = queries.get(random.nextInt(queries.size()));
+            }
+            List<String> folded = Arrays.stream(words)
+                                        .map(w -> foldCase ? w.toLowerCase(Locale.ROOT) : w)
+                                        .collect(Collectors.toList());
+            String query = Arrays.toString(words);
+            assertArrayEquals("and " + query, scan(line -> line.containsAll(folded)), index.and(words));
+            assertArrayEquals("or " + query,
+                              scan(line -> folded.stream().anyMatch(line::contains)), index.or(words));
+            assertArrayEquals("phrase " + query, scan(line -> containsPhrase(line, folded)), index.phrase(words));
+        }
+        // phrases that do occur, taken from the text
+        for (int k = 0; k < 300; k++) {
+            List<String> line = lineWords.get(random.nextInt(lineWords.size()));
+            if (line.isEmpty()) {
+                continue;
+            }
+            int from = random.nextInt(line.size());
+            int to = Math.min(line.size(), from + 1 + random.nextInt(4));
+            List<String> phrase = line.subList(from, to);
+            assertArrayEquals("phrase " + phrase, scan(l -> containsPhrase(l, phrase)),
+                              index.phrase(phrase.toArray(new String[0])));
+            assertArrayEquals("phrase " + phrase, scan(l -> containsPhrase(l, phrase)),
+                              index.phrase(String.join(" - ", phrase)));
+        }
+        assertArrayEquals(new long[0], index.and());
+        assertArrayEquals(new long[0], index.or());
+        assertArrayEquals(new long[0], index.phrase());
+    }
+
+    @Test
+    public void queriesMatchScan() throws IOException {
+        assertMatchesScan(build(randomText(1, 2_000), false), false);
+    }
+
+    @Test
+    public void foldedQueriesMatchScan() throws IOException {
+        assertMatchesScan(build(randomText(2, 2_000), true), true);
+    }
+
+    @Test
+    public void lineStartsMatchReaderLines() throws IOException {
+        for (boolean foldCase : new boolean[] { false, true }) {
+            InvertedIndex index = build(randomText(3, 500), foldCase);
+            List<String> lines = new BufferedReader(new StringReader(text)).lines().collect(Collectors.toList());
+            assertEquals(lines.size(), index.lineCount());
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < lines.size(); i++) {
+                byte[] line = lines.get(i).getBytes(StandardCharsets.UTF_8);
+                int start = (int) index.lineStart(i);
+                assertArrayEquals("line " + i, line, Arrays.copyOfRange(bytes, start, start + line.length));
+            }
+        }
+    }
+
+    @Test
+    public void termCountIsDistinctWords() throws IOException {
+        InvertedIndex exact = build(randomText(4, 1_000), false);
+        assertEquals(lineWords.stream().flatMap(List::stream).distinct().count(), exact.termCount());
+        InvertedIndex folded = build(randomText(4, 1_000), true);
+        assertEquals(lineWords.stream().flatMap(List::stream).distinct().count(), folded.termCount());
+    }
+}
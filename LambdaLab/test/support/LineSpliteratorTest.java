@@ -0,0 +1,109 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the lines of a Corpus, split for a parallel stream, are the
+ * same as BufferedReader.lines() gives, wherever the splits fall.
+ */
+public class LineSpliteratorTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    Path write(String text) throws IOException {
+        Path path = tmp.newFile().toPath();
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    static List<String> readerLines(String text) {
+        return new BufferedReader(new StringReader(text)).lines().collect(Collectors.toList());
+    }
+
+    /** Returns random text of at least the given length in bytes. */
+    static String randomText(long seed, int minBytes) {
+        String[] words = { "From", "fairest", "créatures", "we", "désire", "increase", "€", "😀", "" };
+        String[] terminators = { "\n", "\r", "\r\n", "\n\n", "\r\r\n", "\r\n\r" };
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < minBytes) {
+            for (int n = random.nextInt(12); n > 0; n--) {
+                sb.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            sb.append(terminators[random.nextInt(terminators.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void largeTextSplits() throws IOException {
+        String text = randomText(1, 4 * LineSpliterator.MIN_SPLIT);
+        Corpus c = new Corpus(write(text));
+        assertTrue(c.size() > 2 * LineSpliterator.MIN_SPLIT);
+        assertNotNull(new LineSpliterator(c, 0, c.size()).trySplit());
+    }
+
+    @Test
+    public void parallelLinesMatchReader() throws IOException {
+        for (long seed = 0; seed < 4; seed++) {
+            String text = randomText(seed, 5 * LineSpliterator.MIN_SPLIT / 2);
+            List<String> expected = readerLines(text);
+            Path path = write(text);
+            assertEquals(expected, new Corpus(path).lines().parallel().collect(Collectors.toList()));
+            assertEquals(expected, new Corpus(path, 12).lines().parallel().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void parallelLinesMatchReaderWithoutFinalTerminator() throws IOException {
+        String text = randomText(9, 3 * LineSpliterator.MIN_SPLIT) + "last line";
+        assertEquals(readerLines(text), new Corpus(write(text)).lines().parallel().collect(Collectors.toList()));
+    }
+
+    /** Splits recursively, and returns the lines of the pieces in order. */
+    static void collect(Spliterator<String> s, List<String> lines) {
+        Spliterator<String> prefix = s.trySplit();
+        if (prefix != null) {
+            collect(prefix, lines);
+            collect(s, lines);
+        } else {
+            s.forEachRemaining(lines::add);
+        }
+    }
+
+    @Test
+    public void splitsBetweenCarriageReturnAndNewline() throws IOException {
+        // the midpoint lands on each byte of a run of terminators in turn;
+        // the filler is ASCII so that chars and bytes line up
+        String filler = randomText(3, 2 * LineSpliterator.MIN_SPLIT).replaceAll("[^\\x00-\\x7f]+", "?");
+        for (String terminators : new String[] { "\r\n\r\n", "\r\r\n\n", "\r\r\r\r", "\n\n\n\n" }) {
+            for (int pad = 0; pad <= 8; pad++) {
+                String text = filler + "xxxxxxxx".substring(0, pad) + terminators
+                              + "xxxxxxxx".substring(pad) + filler;
+                Corpus c = new Corpus(write(text));
+                List<String> lines = new ArrayList<>();
+                collect(new LineSpliterator(c, 0, c.size()), lines);
+                assertEquals(terminators.replace("\r", "CR").replace("\n", "LF") + " pad " + pad,
+                             readerLines(text), lines);
+            }
+        }
+    }
+}
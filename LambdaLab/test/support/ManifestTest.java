@@ -0,0 +1,140 @@
+package support;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that Manifest tells current outputs from stale ones.
+ */
+public class ManifestTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    Path input;
+    Path output;
+    String inputHash;
+    Manifest manifest;
+
+    @Before
+    public void setUp() throws IOException {
+        input = tmp.newFile("In.java").toPath();
+        output = tmp.newFile("Out.java").toPath();
+        write(input, "package solutions;\n");
+        write(output, "package exercises;\n");
+        inputHash = Manifest.hash(input);
+        manifest = new Manifest(tmp.getRoot().toPath().resolve(".grind-manifest"), "1 lines LF");
+    }
+
+    static void write(Path path, String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Moves the file's modification time, so only a hash can tell. */
+    static void touch(Path path) throws IOException {
+        FileTime t = Files.getLastModifiedTime(path);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(t.toMillis() + 5000));
+    }
+
+    @Test
+    public void unknownInputIsStale() throws IOException {
+        assertFalse(manifest.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void recordedOutputIsCurrent() throws IOException {
+        manifest.record(input, inputHash, output);
+        assertTrue(manifest.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void changedInputIsStale() throws IOException {
+        manifest.record(input, inputHash, output);
+        write(input, "package solutions.x;\n");
+        assertFalse(manifest.isCurrent(input, Manifest.hash(input), output));
+    }
+
+    @Test
+    public void editedOutputIsStale() throws IOException {
+        manifest.record(input, inputHash, output);
+        write(output, "package exercises; // edited\n");
+        assertFalse(manifest.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void editedOutputWithSameSizeIsStale() throws IOException {
+        manifest.record(input, inputHash, output);
+        write(output, "package exercisez;\n");
+        touch(output);
+        assertFalse(manifest.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void deletedOutputIsStale() throws IOException {
+        manifest.record(input, inputHash, output);
+        Files.delete(output);
+        assertFalse(manifest.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void touchedOutputIsCurrentAndRestamped() throws IOException {
+        manifest.record(input, inputHash, output);
+        String before = manifest.entries.get(input.toString());
+        touch(output);
+        assertTrue(manifest.isCurrent(input, inputHash, output));
+        String after = manifest.entries.get(input.toString());
+        assertNotEquals(before, after);
+        assertTrue(after.endsWith(Manifest.stamp(output)));
+    }
+
+    @Test
+    public void unchangedStampSkipsHash() throws IOException {
+        manifest.record(input, inputHash, output);
+        // an edit that keeps size and mtime is trusted to be the recorded output
+        FileTime t = Files.getLastModifiedTime(output);
+        write(output, "package exercisez;\n");
+        Files.setLastModifiedTime(output, t);
+        assertTrue(manifest.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void unstampedEntryIsHashed() throws IOException {
+        manifest.entries.put(input.toString(), inputHash + " " + Manifest.hash(output));
+        assertTrue(manifest.isCurrent(input, inputHash, output));
+        assertTrue(manifest.entries.get(input.toString()).endsWith(Manifest.stamp(output)));
+        manifest.entries.put(input.toString(), inputHash + " " + Manifest.hash(input));
+        assertFalse(manifest.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void savedManifestLoadsForSameRulesOnly() throws IOException {
+        manifest.record(input, inputHash, output);
+        manifest.save();
+        Manifest same = new Manifest(manifest.file, manifest.rules).load();
+        assertTrue(same.isCurrent(input, inputHash, output));
+        Manifest other = new Manifest(manifest.file, "1 mmap").load();
+        assertEquals(0, other.entries.size());
+        assertFalse(other.isCurrent(input, inputHash, output));
+    }
+
+    @Test
+    public void pipelineIsPartOfRulesKey() {
+        Grind lines = new Grind();
+        Grind mapped = new Grind();
+        mapped.mapped = true;
+        assertNotEquals(lines.rulesKey(), mapped.rulesKey());
+        assertTrue(lines.rulesKey().startsWith(Grind.RULES_VERSION + " "));
+    }
+}
@@ -0,0 +1,171 @@
+package support;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that PartitionedGrouping gives the same groups as
+ * Collectors.groupingBy, and that the map over the partitions behaves as
+ * a Map, including equals and hashCode against a HashMap.
+ */
+public class PartitionedGroupingTest {
+    static List<String> words(long seed, int n, int distinct) {
+        Random random = new Random(seed);
+        List<String> words = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            words.add("w" + random.nextInt(distinct));
+        }
+        return words;
+    }
+
+    static void assertSameMap(Map<?, ?> expected, Map<?, ?> actual) {
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertTrue(expected.equals(actual) && actual.equals(expected));
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.keySet(), actual.keySet());
+        assertEquals(actual.keySet(), expected.keySet());
+        assertEquals(expected.entrySet(), actual.entrySet());
+        assertEquals(actual.entrySet(), expected.entrySet());
+    }
+
+    @Test
+    public void countingMatchesGroupingBy() {
+        List<String> words = words(1, 200_000, 20_000);
+        Map<String, Long> expected =
+            words.parallelStream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        Map<String, Long> actual =
+            words.parallelStream().collect(PartitionedGrouping.groupingBy(Function.identity(), Collectors.counting()));
+        assertSameMap(expected, actual);
+        assertSameMap(expected, words.stream().collect(
+            PartitionedGrouping.groupingBy(Function.identity(), Collectors.counting(), 3)));
+    }
+
+    @Test
+    public void downstreamWithFinisherMatchesGroupingBy() {
+        List<String> words = words(2, 100_000, 1_000);
+        Map<Integer, Set<String>> expected =
+            words.parallelStream().collect(Collectors.groupingBy(String::hashCode, Collectors.toSet()));
+        assertSameMap(expected, words.parallelStream().collect(
+            PartitionedGrouping.groupingBy(String::hashCode, Collectors.toSet())));
+
+        Map<Character, Long> byLast = words.parallelStream().collect(
+            Collectors.groupingBy(w -> w.charAt(w.length() - 1), Collectors.counting()));
+        assertSameMap(byLast, words.parallelStream().collect(
+            PartitionedGrouping.groupingBy(w -> w.charAt(w.length() - 1), Collectors.counting())));
+    }
+
+    @Test
+    public void listGroupsHoldTheSameElements() {
+        List<String> words = words(3, 50_000, 500);
+        Map<Integer, List<String>> expected =
+            words.parallelStream().collect(Collectors.groupingBy(String::length));
+        Map<Integer, List<String>> actual =
+            words.parallelStream().collect(PartitionedGrouping.groupingBy(String::length));
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Integer k : expected.keySet()) {
+            // unordered: the same elements, maybe in another order
+            List<String> a = new ArrayList<>(actual.get(k));
+            List<String> e = new ArrayList<>(expected.get(k));
+            a.sort(null);
+            e.sort(null);
+            assertEquals(e, a);
+        }
+    }
+
+    @Test
+    public void viewSupportsGetPutRemove() {
+        List<String> words = words(4, 20_000, 2_000);
+        Map<String, Long> actual =
+            words.parallelStream().collect(PartitionedGrouping.groupingBy(Function.identity(), Collectors.counting()));
+        Map<String, Long> expected = new HashMap<>(
+            words.stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting())));
+
+        Random random = new Random(5);
+        for (int i = 0; i < 5_000; i++) {
+            String key = "w" + random.nextInt(3_000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.get(key), actual.get(key));
+                    assertEquals(expected.containsKey(key), actual.containsKey(key));
+                    break;
+                case 1:
+                    assertEquals(expected.put(key, (long) i), actual.put(key, (long) i));
+                    break;
+                default:
+                    assertEquals(expected.remove(key), actual.remove(key));
+                    break;
+            }
+        }
+        assertNull(actual.get(null));
+        assertNull(actual.remove(null));
+        assertFalse(actual.containsKey(null));
+        assertSameMap(expected, actual);
+    }
+
+    @Test
+    public void entrySetIteratorRemoves() {
+        List<String> words = words(6, 20_000, 2_000);
+        Map<String, Long> actual =
+            words.parallelStream().collect(PartitionedGrouping.groupingBy(Function.identity(), Collectors.counting()));
+        Map<String, Long> expected = new HashMap<>(actual);
+
+        int seen = 0;
+        for (Iterator<Map.Entry<String, Long>> it = actual.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> e = it.next();
+            seen++;
+            if (e.getValue() % 2 == 0) {
+                // hasNext() may have moved on to the next partition
+                it.hasNext();
+                it.remove();
+                expected.remove(e.getKey());
+            } else {
+                e.setValue(e.getValue() + 1000);
+                expected.put(e.getKey(), e.getValue());
+            }
+        }
+        assertEquals(seen, words.stream().distinct().count());
+        assertSameMap(expected, actual);
+
+        Map.Entry<String, Long> first = expected.entrySet().iterator().next();
+        Map.Entry<String, Long> entry = new AbstractMap.SimpleEntry<>(first);
+        assertTrue(actual.entrySet().contains(entry));
+        entry.setValue(entry.getValue() + 1);
+        assertFalse(actual.entrySet().contains(entry));
+        assertFalse(actual.entrySet().remove(entry));
+        entry.setValue(entry.getValue() - 1);
+        assertTrue(actual.entrySet().remove(entry));
+        expected.remove(entry.getKey());
+        assertFalse(actual.entrySet().contains(entry));
+        assertFalse(actual.entrySet().contains("w1"));
+        assertSameMap(expected, actual);
+
+        actual.entrySet().removeIf(e -> e.getKey().endsWith("7"));
+        expected.entrySet().removeIf(e -> e.getKey().endsWith("7"));
+        assertSameMap(expected, actual);
+
+        Iterator<Map.Entry<String, Long>> it = actual.entrySet().iterator();
+        try {
+            it.remove();
+            throw new AssertionError("remove before next");
+        } catch (IllegalStateException expectedException) {
+            // as for any iterator
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that SuiteDaemon can run tests that use package-private members of
+ * the classes under test, which needs both to come from the same loader.
+ * Runs from the project directory, against the build directories.
+ */
+public class SuiteDaemonTest {
+    static final Path CLASSES = Paths.get("build", "classes");
+    static final Path TEST_CLASSES = Paths.get("build", "test", "classes");
+
+    @Test
+    public void loadsClassesUnderTestWithTests() throws Exception {
+        try (SuiteDaemon.ChildFirstClassLoader loader = new SuiteDaemon.ChildFirstClassLoader(
+                 new URL[] { TEST_CLASSES.toUri().toURL(), CLASSES.toUri().toURL() },
+                 SuiteDaemonTest.class.getClassLoader())) {
+            Class<?> test = loader.loadClass("support.TopKTest");
+            Class<?> tested = loader.loadClass("support.TopK");
+            assertSame(loader, test.getClassLoader());
+            assertSame(loader, tested.getClassLoader());
+            assertNotSame(TopK.class, tested);
+            assertSame(Test.class, loader.loadClass("org.junit.Test"));
+        }
+    }
+
+    @Test
+    public void runsSupportTests() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        boolean ok = new SuiteDaemon(CLASSES, TEST_CLASSES)
+            .run(Arrays.asList("support.TopKTest", "support.ManifestTest"), out);
+        String output = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(output, ok);
+        assertTrue(output, output.contains("OK ("));
+    }
+}
@@ -0,0 +1,131 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that Tokenizer gives the same words as splitting each line with
+ * SPLIT_PATTERN, and that Dictionary gives them back unchanged.
+ */
+public class TokenizerTest {
+    static final Pattern SPLIT_PATTERN = Pattern.compile("[- .:,]+");
+
+    static final String EDGES =
+        "\n" +                                  // empty line
+        "- .:,\n" +                             // nothing but separators
+        ", leading separator\r" +
+        "trailing separator. \r\n" +
+        "\r\n" +
+        "\r" +
+        "café naïve-€5,世界 😀 end\n" +
+        "no:final-newline";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    Corpus corpus(String text) throws IOException {
+        Path path = tmp.newFile().toPath();
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        // small chunks, so that words cross chunk boundaries
+        return new Corpus(path, CorpusTest.SMALL_SHIFT);
+    }
+
+    static List<String> split(String text) {
+        return new BufferedReader(new StringReader(text)).lines()
+                                                         .flatMap(SPLIT_PATTERN::splitAsStream)
+                                                         .collect(Collectors.toList());
+    }
+
+    static String randomText(long seed, int words) {
+        String[] vocabulary = { "the", "a", "fair", "café", "€", "世界", "😀", "x" };
+        String[] separators = { " ", " ", "-", ". ", ":", ",", " - ", "\n", "\r", "\r\n", "\n\n", "\r\n, ", "\n-\n" };
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append(vocabulary[random.nextInt(vocabulary.length)])
+              .append(separators[random.nextInt(separators.length)]);
+        }
+        return sb.toString();
+    }
+
+    void assertSameWords(String text) throws IOException {
+        assertEquals(split(text), new Tokenizer(corpus(text)).strings().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void edgeLinesMatchSplitPattern() throws IOException {
+        assertSameWords(EDGES);
+        for (String line : EDGES.split("(?<=\n)|(?<=\r)(?!\n)")) {
+            assertSameWords(line);
+            assertSameWords("x\n" + line);
+        }
+    }
+
+    @Test
+    public void emptyCorpusHasNoWords() throws IOException {
+        assertSameWords("");
+        assertSameWords("\n");
+        assertSameWords("\r\n\r\n");
+        assertSameWords(" ,\n");
+    }
+
+    @Test
+    public void randomTextMatchesSplitPattern() throws IOException {
+        for (long seed = 0; seed < 20; seed++) {
+            assertSameWords(randomText(seed, 500));
+        }
+    }
+
+    @Test
+    public void tokenViewMatchesString() throws IOException {
+        String text = randomText(42, 500);
+        List<String> views = new ArrayList<>();
+        new Tokenizer(corpus(text)).forEach(word -> {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < word.length(); i++) {
+                sb.append(word.charAt(i));
+            }
+            assertEquals(word.toString(), sb.toString());
+            views.add(sb.toString());
+        });
+        assertEquals(split(text), views);
+    }
+
+    @Test
+    public void dictionaryRoundTrips() throws IOException {
+        String text = randomText(7, 5000) + EDGES;
+        for (int i = 0; i < 1000; i++) {
+            // enough distinct words to grow the table and the arena
+            text += "wörd" + i + " ";
+        }
+        List<String> words = split(text);
+        Tokenizer.Dictionary dictionary = new Tokenizer.Dictionary();
+        List<Integer> ids = new ArrayList<>();
+        new Tokenizer(corpus(text)).forEachId(dictionary, ids::add);
+
+        assertEquals(words.size(), ids.size());
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(words.get(i), dictionary.word(ids.get(i)));
+            // a String interns to the same id as the token did
+            assertEquals(ids.get(i).intValue(), dictionary.intern(words.get(i)));
+        }
+        assertEquals(words.stream().distinct().count(), dictionary.size());
+        assertEquals(words.stream().distinct().collect(Collectors.toList()),
+                     ids.stream().distinct().map(dictionary::word).collect(Collectors.toList()));
+    }
+}
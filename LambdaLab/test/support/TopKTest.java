@@ -0,0 +1,38 @@
+package support;
+
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the Space-Saving summary.
+ */
+public class TopKTest {
+    static TopK.SpaceSaving summary(int capacity, String... words) {
+        TopK.SpaceSaving s = new TopK.SpaceSaving(capacity);
+        Stream.of(words).forEach(s::add);
+        return s;
+    }
+
+    @Test
+    public void tieIsNotGuaranteed() {
+        TopK.SpaceSaving s = summary(3, "a", "b", "a", "b", "c");
+        assertFalse(s.isGuaranteed("a", 1));
+        assertTrue(s.isGuaranteed("a", 2));
+        assertTrue(s.isGuaranteed("b", 2));
+    }
+
+    @Test
+    public void inheritedErrorIsNotGuaranteed() {
+        // d takes over c's counter, so its count of 2 has an error of 1
+        TopK.SpaceSaving s = summary(3, "a", "a", "a", "b", "b", "c", "d");
+        assertEquals(2, s.estimate("d"));
+        assertEquals(1, s.error("d"));
+        assertTrue(s.isGuaranteed("a", 1));
+        assertFalse(s.isGuaranteed("d", 2));
+    }
+}
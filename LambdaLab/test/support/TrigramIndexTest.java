@@ -0,0 +1,129 @@
+package support;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that TrigramIndex.results() gives the same matches as
+ * Matcher.results() over the whole text, whether or not it narrows.
+ */
+public class TrigramIndexTest {
+    static final String SONNET =
+        "From fairest creatures we desire increase,\n" +
+        "That thereby beauty's rose might never die,\r\n" +
+        "But as the riper should by time decease,\r" +
+        "His tender heir might bear his memory:\n" +
+        "But thou contracted to thine own bright eyes,\n" +
+        "Feed'st thy light's flame with self-substantial fuel,\n" +
+        "Making a famine where abundance lies,\n" +
+        "Thy self thy foe, to thy sweet self too cruel:\n" +
+        "abc\rdef abc\ndef\r\nabc.def\n" +
+        "Thou that art now the world's fresh ornament,";
+
+    /** Patterns that narrow to candidate lines. */
+    static final String[] NARROWED = {
+        "[aeiou]{3}", "(?i)[AEIOU]{3}", "the", "(?i)THE", "\\bthe\\b", "beauty's",
+        "fair|rose", "^From", "(?m)^But", "ure$", "(?m)ies,$", "fuel,\\z", "ment,\\Z",
+        "\\Athe", "th[aeiou]+", "(?<=t)hou", "tho(?=u)", "thy(?! light)", "(t)hy \\1?s",
+        "\\x74he", "\\u0074he", "[t][h][e]", "e\\Q's\\E", "abc.def", "(?i)abc.def",
+        "(?m)abc.def$", "x{0}the", "Th[oy]{1,2}",
+    };
+
+    /** Patterns that must be run over the whole text. */
+    static final String[] SCANNED = {
+        "\\b[a-z]+'[a-z]{2,}\\b", "\\Gabc", "\\GFrom", "(?:\\G\\w+\\s?)", "(?d)abc.def",
+        "(?d:abc.def)", "(?s)abc.def", "abc\\sdef", "abc\\Rdef", "abc[^x]def", "e\nT",
+        "(?x)t h e", "(?u)(?i)the", "\\p{Lower}he", "[\\w&&[^x]]he", "tender|",
+    };
+
+    static String matches(List<MatchResult> results) {
+        return results.stream()
+                      .map(r -> r.start() + "-" + r.end() + ":" + r.group())
+                      .collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    static void assertSameMatches(TrigramIndex index, String text, Pattern pattern) {
+        assertEquals(pattern + " (flags " + pattern.flags() + ")",
+                     matches(pattern.matcher(text).results().collect(Collectors.toList())),
+                     matches(index.results(pattern)));
+    }
+
+    @Test
+    public void narrowedPatternsMatchFullScan() {
+        TrigramIndex index = new TrigramIndex(SONNET);
+        for (String re : NARROWED) {
+            Pattern pattern = Pattern.compile(re);
+            assertNotNull(re, index.candidates(pattern));
+            assertSameMatches(index, SONNET, pattern);
+        }
+    }
+
+    @Test
+    public void scannedPatternsMatchFullScan() {
+        TrigramIndex index = new TrigramIndex(SONNET);
+        for (String re : SCANNED) {
+            Pattern pattern = Pattern.compile(re);
+            assertNull(re, index.candidates(pattern));
+            assertSameMatches(index, SONNET, pattern);
+        }
+    }
+
+    @Test
+    public void flagsMatchFullScan() {
+        TrigramIndex index = new TrigramIndex(SONNET);
+        int[] flags = {
+            0, Pattern.CASE_INSENSITIVE, Pattern.MULTILINE, Pattern.DOTALL, Pattern.UNIX_LINES,
+            Pattern.UNIX_LINES | Pattern.MULTILINE, Pattern.COMMENTS, Pattern.LITERAL,
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE,
+        };
+        for (String re : NARROWED) {
+            for (int f : flags) {
+                assertSameMatches(index, SONNET, Pattern.compile(re, f));
+            }
+        }
+    }
+
+    @Test
+    public void unixLinesDotSpansCarriageReturn() {
+        String text = "abc\rdef";
+        TrigramIndex index = new TrigramIndex(text);
+        assertEquals("[0-7:abc\rdef]", matches(index.results(Pattern.compile("abc.def", Pattern.UNIX_LINES))));
+        assertEquals("[0-7:abc\rdef]", matches(index.results(Pattern.compile("(?d)abc.def"))));
+        assertEquals("[]", matches(index.results(Pattern.compile("abc.def"))));
+    }
+
+    @Test
+    public void continuationAnchorMatchesOnlyAtStart() {
+        assertEquals("[0-3:abc]", matches(new TrigramIndex("abc\nabc").results(Pattern.compile("\\Gabc"))));
+        assertEquals("[]", matches(new TrigramIndex("xabc\nabc").results(Pattern.compile("\\Gabc"))));
+    }
+
+    @Test
+    public void randomTextMatchesFullScan() {
+        String[] words = SONNET.split("\\s+");
+        String[] separators = { " ", " ", " ", "\n", "\r\n", "\r", ", " };
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            sb.append(words[random.nextInt(words.length)])
+              .append(separators[random.nextInt(separators.length)]);
+        }
+        String text = sb.toString();
+        TrigramIndex index = new TrigramIndex(text);
+        for (String re : NARROWED) {
+            assertSameMatches(index, text, Pattern.compile(re));
+        }
+        for (String re : SCANNED) {
+            assertSameMatches(index, text, Pattern.compile(re));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that WordCounts counts the same as groupingBy(identity(),
+ * counting()), across several resizes of its table.
+ */
+public class WordCountsTest {
+    /** Returns words with a skewed distribution over about distinct words. */
+    static List<String> words(long seed, int n, int distinct) {
+        Random random = new Random(seed);
+        List<String> words = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int k = (int) Math.abs(random.nextGaussian() * distinct / 3) % distinct;
+            words.add(k % 7 == 0 ? "wört" + k : "w" + k);
+        }
+        // distinct words with the same String hash code
+        words.add("Aa");
+        words.add("BB");
+        words.add("AaAa");
+        words.add("BBBB");
+        words.add("AaBB");
+        words.add("Aa");
+        return words;
+    }
+
+    static Map<String, Long> expected(List<String> words) {
+        return words.stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    }
+
+    @Test
+    public void addMatchesGroupingBy() {
+        List<String> words = words(1, 50_000, 5_000);
+        WordCounts counts = new WordCounts();
+        for (String w : words) {
+            // a view that isn't a String, as Tokenizer gives
+            counts.add(new StringBuilder(w));
+        }
+        Map<String, Long> expected = expected(words);
+        assertTrue(counts.words.length > 4 * WordCounts.INITIAL_CAPACITY);
+        assertEquals(expected, counts.toMap());
+        assertEquals(expected.size(), counts.size());
+        assertEquals(words.size(), counts.total());
+        for (Map.Entry<String, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue().longValue(), counts.get(e.getKey()));
+        }
+        assertEquals(0, counts.get("absent"));
+    }
+
+    @Test
+    public void addAllMatchesGroupingBy() {
+        List<String> a = words(2, 20_000, 3_000);
+        List<String> b = words(3, 20_000, 6_000);
+        WordCounts left = new WordCounts(1);
+        a.forEach(left::add);
+        WordCounts right = new WordCounts(1);
+        b.forEach(right::add);
+
+        List<String> both = new ArrayList<>(a);
+        both.addAll(b);
+        // the smaller table grows while the larger is added to it
+        assertEquals(expected(both), new WordCounts(1).addAll(left).addAll(right).toMap());
+        assertEquals(expected(both), left.addAll(right).toMap());
+    }
+
+    @Test
+    public void countingMatchesGroupingBy() {
+        List<String> words = words(4, 200_000, 20_000);
+        Map<String, Long> expected = expected(words);
+        assertEquals(expected, words.stream().collect(WordCounts.counting()).toMap());
+        assertEquals(expected, words.parallelStream().collect(WordCounts.counting()).toMap());
+        assertEquals(expected, words.parallelStream().collect(WordCounts.countingToMap()));
+    }
+
+    @Test
+    public void sizedCounterGrowsPastItsEstimate() {
+        List<String> words = words(5, 10_000, 2_000);
+        WordCounts counts = new WordCounts(10);
+        words.forEach(w -> counts.add(w, 2));
+        Map<String, Long> expected = expected(words);
+        expected.replaceAll((w, n) -> 2 * n);
+        assertEquals(expected, counts.toMap());
+    }
+}